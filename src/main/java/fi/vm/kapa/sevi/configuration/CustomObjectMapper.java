@@ -22,10 +22,15 @@
  */
 package fi.vm.kapa.sevi.configuration;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
+import fi.vm.kapa.sevi.ontology.dto.AbstractDTO;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -33,12 +38,32 @@ public class CustomObjectMapper extends ObjectMapper {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The id of the property filter of the concept DTOs. All the properties are written unless the writer is given
+     * another filter with this id.
+     */
+    public static final String PROJECTION_FILTER = "projection";
+
     public CustomObjectMapper() {
-        super();
+        this(null);
+    }
+
+    /**
+     * @param factory the data format, such as Smile or CBOR, or null for JSON
+     */
+    public CustomObjectMapper(JsonFactory factory) {
+        super(factory);
         registerModule(new JSR310Module());
         configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        addMixIn(AbstractDTO.class, ProjectionMixIn.class);
+        setFilterProvider(new SimpleFilterProvider()
+                .addFilter(PROJECTION_FILTER, SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+    @JsonFilter(PROJECTION_FILTER)
+    private interface ProjectionMixIn {
     }
 
 }
@@ -24,6 +24,7 @@ package fi.vm.kapa.sevi.configuration;
 
 
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import fi.vm.kapa.sevi.ontology.resource.ConditionalGetFilter;
 import fi.vm.kapa.sevi.ontology.resource.OntologyMaintenanceResource;
 import fi.vm.kapa.sevi.ontology.resource.OntologyResource;
 import fi.vm.kapa.sevi.ontology.resource.VersionResource;
@@ -47,9 +48,11 @@ public class JerseyResourceConfig extends ResourceConfig {
         JacksonJaxbJsonProvider provider = new JacksonJaxbJsonProvider();
         provider.setMapper(new CustomObjectMapper());
         register(provider);
+        // The Smile and CBOR responses are serialised by SerializedResponseCache, so they need no providers.
         register(OntologyResource.class);
         register(OntologyMaintenanceResource.class);
         register(VersionResource.class);
+        register(ConditionalGetFilter.class);
         register(OntologyExceptionMapper.class);
         register(UnhandledExceptionMapper.class);
     }
@@ -22,16 +22,20 @@
  */
 package fi.vm.kapa.sevi.configuration;
 
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
 import fi.vm.kapa.sevi.ontology.exception.NotFoundException;
 import fi.vm.kapa.sevi.ontology.exception.OntologyException;
+import fi.vm.kapa.sevi.ontology.exception.ServiceOverloadedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
 
 /**
  * Exception mapping configurations
@@ -44,6 +48,9 @@ public class OntologyExceptionMapper implements ExceptionMapper<OntologyExceptio
     public Response toResponse(OntologyException exception) {
         if(exception instanceof NotFoundException) {
             return getResponse(NOT_FOUND, exception);
+        } else if (exception instanceof ServiceOverloadedException
+                || exception instanceof FusekiUnavailableException) {
+            return getResponse(SERVICE_UNAVAILABLE, exception);
         } else {
             return getResponse(BAD_REQUEST, exception);
         }
@@ -51,7 +58,9 @@ public class OntologyExceptionMapper implements ExceptionMapper<OntologyExceptio
 
     private Response getResponse(Response.Status status, OntologyException exception) {
         LOG.info(exception.getMessage());
+        // The errors are JSON even when the client asked for a binary format.
         return Response.status(status)
+                .type(MediaType.APPLICATION_JSON)
                 .entity(new ErrorDTO(exception.getMessage()))
                 .build();
     }
@@ -58,6 +58,8 @@ public class AbstractDTO implements Serializable {
 
     public AbstractDTO(ConceptDTO concept) {
         this(concept.getId(), concept.getLabel(), concept.getNotation(), concept.getConceptType());
+        this.swedish = concept.getSwedish();
+        this.english = concept.getEnglish();
     }
 
     public String getId() {
@@ -84,6 +86,28 @@ public class AbstractDTO implements Serializable {
         this.finnish = finnish;
     }
 
+    /**
+     * @return the Swedish preferred label, or the Finnish one if the concept has no Swedish label.
+     */
+    public String getSwedish() {
+        return swedish;
+    }
+
+    public void setSwedish(String swedish) {
+        this.swedish = swedish;
+    }
+
+    /**
+     * @return the English preferred label, or the Finnish one if the concept has no English label.
+     */
+    public String getEnglish() {
+        return english;
+    }
+
+    public void setEnglish(String english) {
+        this.english = english;
+    }
+
     public String getNotation() {
         return notation;
     }
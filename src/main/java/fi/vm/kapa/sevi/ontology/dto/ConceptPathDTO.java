@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The hierarchical relation between two concepts: their lowest common ancestors and a shortest path
+ * through the first of them.
+ */
+public class ConceptPathDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String uri;
+    private String other;
+    private List<String> lowestCommonAncestors = new ArrayList<>();
+    private List<String> path = new ArrayList<>();
+    private Integer distance;
+
+    public ConceptPathDTO() {
+        // A dummy constructor or jackson may stumble with mapping :(
+    }
+
+    public ConceptPathDTO(String uri, String other, List<String> lowestCommonAncestors, List<String> path) {
+        this.uri = uri;
+        this.other = other;
+        this.lowestCommonAncestors = lowestCommonAncestors;
+        this.path = path;
+        // The number of broader/narrower steps, null when the concepts are not related.
+        this.distance = path.isEmpty() ? null : path.size() - 1;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    public String getOther() {
+        return other;
+    }
+
+    public void setOther(String other) {
+        this.other = other;
+    }
+
+    public List<String> getLowestCommonAncestors() {
+        return lowestCommonAncestors;
+    }
+
+    public void setLowestCommonAncestors(List<String> lowestCommonAncestors) {
+        this.lowestCommonAncestors = lowestCommonAncestors;
+    }
+
+    public List<String> getPath() {
+        return path;
+    }
+
+    public void setPath(List<String> path) {
+        this.path = path;
+    }
+
+    public Integer getDistance() {
+        return distance;
+    }
+
+    public void setDistance(Integer distance) {
+        this.distance = distance;
+    }
+
+    @Override
+    public String toString() {
+        return "ConceptPathDTO [uri=" + uri + ", other=" + other + ", lowestCommonAncestors=" + lowestCommonAncestors
+                + ", path=" + path + ", distance=" + distance + "]";
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.dto;
+
+import java.io.Serializable;
+
+/**
+ * One "is the concept narrower than the ancestor" question of a batch request. The answer is filled in to
+ * the narrower field of the response.
+ */
+public class NarrowerCheckDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String uri;
+    private String ancestor;
+    private Boolean narrower;
+
+    public NarrowerCheckDTO() {
+        // A dummy constructor or jackson may stumble with mapping :(
+    }
+
+    public NarrowerCheckDTO(String uri, String ancestor) {
+        this.uri = uri;
+        this.ancestor = ancestor;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    public String getAncestor() {
+        return ancestor;
+    }
+
+    public void setAncestor(String ancestor) {
+        this.ancestor = ancestor;
+    }
+
+    public Boolean getNarrower() {
+        return narrower;
+    }
+
+    public void setNarrower(Boolean narrower) {
+        this.narrower = narrower;
+    }
+
+    @Override
+    public String toString() {
+        return "NarrowerCheckDTO [uri=" + uri + ", ancestor=" + ancestor + ", narrower=" + narrower + "]";
+    }
+}
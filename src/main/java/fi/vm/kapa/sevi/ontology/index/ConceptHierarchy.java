@@ -0,0 +1,470 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reachability index over the skos:broader hierarchy of one concept scheme.
+ * <p>
+ * Each concept gets a post-order number from a depth-first walk over a spanning forest of the hierarchy and a
+ * sorted set of post-order intervals that covers all of its descendants. In a plain tree the set is the single
+ * subtree interval; concepts with more than one broader concept only add the intervals of the extra subtrees
+ * (Agrawal, Borgida &amp; Jagadish 1989). Answering "is A narrower than B" is then an interval lookup.
+ * <p>
+ * The same walk records an Euler tour of the spanning forest with a sparse table over it, which answers lowest
+ * common ancestor queries in constant time whenever neither concept has more than one path to its root.
+ */
+public class ConceptHierarchy {
+
+    private final Map<String, Integer> ids;
+    private final String[] uris;
+
+    // The narrower concepts of node i are children[childOffsets[i]] .. children[childOffsets[i + 1] - 1].
+    private final int[] childOffsets;
+    private final int[] children;
+    // The broader concepts in the same layout.
+    private final int[] parentOffsets;
+    private final int[] parents;
+
+    private final int[] post;
+    private final int[] byPost;
+    // Flattened and sorted [start0, end0, start1, end1, ...] post-order intervals per node.
+    private final int[][] intervals;
+
+    // Spanning forest of the depth-first walk.
+    private final int[] treeParent;
+    private final int[] depth;
+    private final int[] treeRoot;
+    // True when the node and all of its ancestors have at most one broader concept.
+    private final boolean[] singlePath;
+    private final int[] euler;
+    private final int[] firstVisit;
+    // sparseTable[k][i] is the shallowest node of euler[i] .. euler[i + 2^k - 1].
+    private int[][] sparseTable;
+
+    private ConceptHierarchy(Map<String, Integer> ids, String[] uris, int[][] childAdjacency,
+                             int[][] parentAdjacency) {
+        int n = uris.length;
+        this.ids = ids;
+        this.uris = uris;
+        this.childOffsets = childAdjacency[0];
+        this.children = childAdjacency[1];
+        this.parentOffsets = parentAdjacency[0];
+        this.parents = parentAdjacency[1];
+        this.post = new int[n];
+        this.byPost = new int[n];
+        this.intervals = new int[n][];
+        this.treeParent = new int[n];
+        this.depth = new int[n];
+        this.treeRoot = new int[n];
+        this.singlePath = new boolean[n];
+        this.euler = new int[Math.max(2 * n - 1, 0)];
+        this.firstVisit = new int[n];
+        label();
+    }
+
+    /**
+     * Builds the hierarchy from the broader relations of a scheme. Self references and duplicates are ignored.
+     */
+    public static ConceptHierarchy build(Collection<BroaderRelation> relations) {
+        Set<String> sortedUris = new TreeSet<>();
+        for (BroaderRelation relation : relations) {
+            sortedUris.add(relation.getUri());
+            sortedUris.add(relation.getBroader());
+        }
+        String[] uris = sortedUris.toArray(new String[sortedUris.size()]);
+        Map<String, Integer> ids = new HashMap<>(uris.length * 2);
+        for (int i = 0; i < uris.length; i++) {
+            ids.put(uris[i], i);
+        }
+
+        Set<Long> edges = new HashSet<>();
+        for (BroaderRelation relation : relations) {
+            int child = ids.get(relation.getUri());
+            int parent = ids.get(relation.getBroader());
+            if (child != parent) {
+                edges.add(((long) parent << 32) | child);
+            }
+        }
+        return new ConceptHierarchy(ids, uris, adjacency(uris.length, edges, true),
+                adjacency(uris.length, edges, false));
+    }
+
+    /**
+     * Packs the edges into offset and target arrays. The targets of each node are sorted, which makes the spanning
+     * forest, and so the numbering, independent of the query result order.
+     */
+    private static int[][] adjacency(int n, Set<Long> edges, boolean fromParent) {
+        int[] offsets = new int[n + 1];
+        for (Long edge : edges) {
+            offsets[source(edge, fromParent) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] targets = new int[edges.size()];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (Long edge : edges) {
+            targets[fill[source(edge, fromParent)]++] = source(edge, !fromParent);
+        }
+        for (int i = 0; i < n; i++) {
+            Arrays.sort(targets, offsets[i], offsets[i + 1]);
+        }
+        return new int[][] {offsets, targets};
+    }
+
+    private static int source(long edge, boolean fromParent) {
+        return fromParent ? (int) (edge >>> 32) : (int) (edge & 0xFFFFFFFFL);
+    }
+
+    public int size() {
+        return uris.length;
+    }
+
+    public boolean contains(String uri) {
+        return ids.containsKey(uri);
+    }
+
+    /**
+     * @return true if the concept is a direct or an indirect narrower concept of the given ancestor.
+     */
+    public boolean isNarrower(String uri, String ancestor) {
+        Integer node = ids.get(uri);
+        Integer ancestorNode = ids.get(ancestor);
+        if (node == null || ancestorNode == null || node.equals(ancestorNode)) {
+            return false;
+        }
+        return covers(ancestorNode, post[node]);
+    }
+
+    /**
+     * Adds the direct and indirect narrower concepts of the concept to the target collection.
+     *
+     * @param maxDepth how many levels down to go, or null for all of them.
+     */
+    public void collectDescendants(String uri, Integer maxDepth, Collection<String> target) {
+        Integer node = ids.get(uri);
+        if (node == null) {
+            return;
+        }
+        if (maxDepth == null) {
+            // All descendants are exactly the concepts numbered within the intervals of the concept.
+            int[] nodeIntervals = intervals[node];
+            for (int i = 0; i < nodeIntervals.length; i += 2) {
+                for (int postOrder = nodeIntervals[i]; postOrder <= nodeIntervals[i + 1]; postOrder++) {
+                    if (byPost[postOrder] != node) {
+                        target.add(uris[byPost[postOrder]]);
+                    }
+                }
+            }
+            return;
+        }
+        Set<Integer> visited = new HashSet<>();
+        List<Integer> level = Collections.singletonList(node);
+        visited.add(node);
+        for (int currentDepth = 0; currentDepth < maxDepth && !level.isEmpty(); currentDepth++) {
+            List<Integer> next = new ArrayList<>();
+            for (int current : level) {
+                for (int i = childOffsets[current]; i < childOffsets[current + 1]; i++) {
+                    if (visited.add(children[i])) {
+                        next.add(children[i]);
+                        target.add(uris[children[i]]);
+                    }
+                }
+            }
+            level = next;
+        }
+    }
+
+    /**
+     * @return the common ancestors of the two concepts that have no narrower common ancestor, a concept itself
+     * counting as its own ancestor. Empty when the concepts are unrelated or unknown.
+     */
+    public List<String> getLowestCommonAncestors(String uri, String other) {
+        Integer node = ids.get(uri);
+        Integer otherNode = ids.get(other);
+        if (node == null || otherNode == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (int ancestor : lowestCommonAncestors(node, otherNode)) {
+            result.add(uris[ancestor]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the concepts on a shortest hierarchical path from the concept up to its first lowest common ancestor
+     * with the other concept and down to the other concept, both ends included. Empty when there is no such path.
+     */
+    public List<String> getPath(String uri, String other) {
+        Integer node = ids.get(uri);
+        Integer otherNode = ids.get(other);
+        if (node == null || otherNode == null) {
+            return Collections.emptyList();
+        }
+        List<Integer> ancestors = lowestCommonAncestors(node, otherNode);
+        if (ancestors.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int ancestor = ancestors.get(0);
+        List<Integer> up = pathUp(node, ancestor);
+        List<Integer> down = pathUp(otherNode, ancestor);
+        List<String> result = new ArrayList<>(up.size() + down.size() - 1);
+        for (int n : up) {
+            result.add(uris[n]);
+        }
+        for (int i = down.size() - 2; i >= 0; i--) {
+            result.add(uris[down.get(i)]);
+        }
+        return result;
+    }
+
+    private List<Integer> lowestCommonAncestors(int node, int other) {
+        if (singlePath[node] && singlePath[other]) {
+            if (treeRoot[node] != treeRoot[other]) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(treeLowestCommonAncestor(node, other));
+        }
+        List<Integer> common = new ArrayList<>();
+        for (int ancestor : ancestorsOrSelf(node)) {
+            if (covers(ancestor, post[other])) {
+                common.add(ancestor);
+            }
+        }
+        List<Integer> lowest = new ArrayList<>();
+        for (int candidate : common) {
+            boolean hasNarrowerCommon = false;
+            for (int narrower : common) {
+                if (narrower != candidate && covers(candidate, post[narrower])) {
+                    hasNarrowerCommon = true;
+                    break;
+                }
+            }
+            if (!hasNarrowerCommon) {
+                lowest.add(candidate);
+            }
+        }
+        lowest.sort((a, b) -> uris[a].compareTo(uris[b]));
+        return lowest;
+    }
+
+    private int treeLowestCommonAncestor(int node, int other) {
+        int from = Math.min(firstVisit[node], firstVisit[other]);
+        int to = Math.max(firstVisit[node], firstVisit[other]);
+        int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return shallower(sparseTable[level][from], sparseTable[level][to - (1 << level) + 1]);
+    }
+
+    private int shallower(int a, int b) {
+        return depth[a] <= depth[b] ? a : b;
+    }
+
+    private Set<Integer> ancestorsOrSelf(int node) {
+        Set<Integer> visited = new LinkedHashSet<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        visited.add(node);
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            for (int i = parentOffsets[current]; i < parentOffsets[current + 1]; i++) {
+                if (visited.add(parents[i])) {
+                    queue.add(parents[i]);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Breadth-first search towards the broader concepts, so the returned path is a shortest one.
+     */
+    private List<Integer> pathUp(int node, int ancestor) {
+        Map<Integer, Integer> previous = new HashMap<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        previous.put(node, -1);
+        queue.add(node);
+        while (!queue.isEmpty() && !previous.containsKey(ancestor)) {
+            int current = queue.poll();
+            for (int i = parentOffsets[current]; i < parentOffsets[current + 1]; i++) {
+                if (!previous.containsKey(parents[i])) {
+                    previous.put(parents[i], current);
+                    queue.add(parents[i]);
+                }
+            }
+        }
+        List<Integer> path = new ArrayList<>();
+        for (int current = ancestor; current != -1; current = previous.get(current)) {
+            path.add(current);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private boolean covers(int node, int postOrder) {
+        int[] nodeIntervals = intervals[node];
+        int low = 0;
+        int high = nodeIntervals.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (nodeIntervals[2 * mid] > postOrder) {
+                high = mid - 1;
+            } else if (nodeIntervals[2 * mid + 1] < postOrder) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int childCount(int node) {
+        return childOffsets[node + 1] - childOffsets[node];
+    }
+
+    private int parentCount(int node) {
+        return parentOffsets[node + 1] - parentOffsets[node];
+    }
+
+    private void label() {
+        int n = uris.length;
+        int[] low = new int[n];
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int counter = 0;
+        int tourLength = 0;
+        // Roots first; the second pass picks up concepts that are only reachable through a cycle.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < n; root++) {
+                if (visited[root] || (pass == 0 && parentCount(root) > 0)) {
+                    continue;
+                }
+                int top = 0;
+                stack[top] = root;
+                visited[root] = true;
+                low[root] = counter;
+                treeParent[root] = -1;
+                treeRoot[root] = root;
+                singlePath[root] = parentCount(root) == 0;
+                firstVisit[root] = tourLength;
+                euler[tourLength++] = root;
+                while (top >= 0) {
+                    int node = stack[top];
+                    if (cursor[node] < childCount(node)) {
+                        int child = children[childOffsets[node] + cursor[node]++];
+                        if (!visited[child]) {
+                            visited[child] = true;
+                            low[child] = counter;
+                            treeParent[child] = node;
+                            treeRoot[child] = root;
+                            depth[child] = depth[node] + 1;
+                            singlePath[child] = singlePath[node] && parentCount(child) == 1;
+                            firstVisit[child] = tourLength;
+                            euler[tourLength++] = child;
+                            stack[++top] = child;
+                        }
+                    } else {
+                        post[node] = counter++;
+                        top--;
+                        if (top >= 0) {
+                            euler[tourLength++] = stack[top];
+                        }
+                    }
+                }
+            }
+        }
+        labelIntervals(low);
+        buildSparseTable(tourLength);
+    }
+
+    private void labelIntervals(int[] low) {
+        int n = uris.length;
+        for (int node = 0; node < n; node++) {
+            byPost[post[node]] = node;
+        }
+        // Narrower concepts always finish before their broader ones, so their intervals are ready to be inherited.
+        // Edges that close a cycle point to an unfinished node and are skipped.
+        for (int node : byPost) {
+            List<int[]> nodeIntervals = new ArrayList<>();
+            nodeIntervals.add(new int[] {low[node], post[node]});
+            for (int i = childOffsets[node]; i < childOffsets[node + 1]; i++) {
+                int child = children[i];
+                if (post[child] < post[node]) {
+                    int[] childIntervals = intervals[child];
+                    for (int j = 0; j < childIntervals.length; j += 2) {
+                        nodeIntervals.add(new int[] {childIntervals[j], childIntervals[j + 1]});
+                    }
+                }
+            }
+            intervals[node] = merge(nodeIntervals);
+        }
+    }
+
+    private static int[] merge(List<int[]> nodeIntervals) {
+        if (nodeIntervals.size() == 1) {
+            return nodeIntervals.get(0);
+        }
+        nodeIntervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int[] merged = new int[nodeIntervals.size() * 2];
+        int size = 0;
+        for (int[] interval : nodeIntervals) {
+            if (size > 0 && interval[0] <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], interval[1]);
+            } else {
+                merged[size++] = interval[0];
+                merged[size++] = interval[1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    private void buildSparseTable(int tourLength) {
+        int levels = tourLength == 0 ? 1 : 32 - Integer.numberOfLeadingZeros(tourLength);
+        sparseTable = new int[levels][];
+        sparseTable[0] = Arrays.copyOf(euler, tourLength);
+        for (int level = 1; level < levels; level++) {
+            int half = 1 << (level - 1);
+            int[] previous = sparseTable[level - 1];
+            int[] current = new int[tourLength - (1 << level) + 1];
+            for (int i = 0; i < current.length; i++) {
+                current[i] = shallower(previous[i], previous[i + half]);
+            }
+            sparseTable[level] = current;
+        }
+    }
+}
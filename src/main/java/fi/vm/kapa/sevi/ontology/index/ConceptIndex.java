@@ -0,0 +1,82 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.index;
+
+import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.service.commons.ConceptType;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory lookup structures of one concept type. These are built when the ontology is loaded and replaced as a
+ * whole when it changes.
+ */
+public class ConceptIndex {
+
+    private final ConceptType conceptType;
+    private final Map<String, ConceptDTO> concepts = new HashMap<>();
+    private final Map<String, ConceptDTO> conceptsByNotation = new HashMap<>();
+    private final ConceptHierarchy hierarchy;
+    private final LabelIndex labels;
+
+    public ConceptIndex(ConceptType conceptType, Collection<ConceptDTO> concepts,
+                        Collection<BroaderRelation> broaderRelations, Collection<ConceptLabel> labels) {
+        this.conceptType = conceptType;
+        for (ConceptDTO concept : concepts) {
+            this.concepts.put(concept.getId(), concept);
+            if (concept.getNotation() != null && !concept.getNotation().isEmpty()) {
+                conceptsByNotation.putIfAbsent(concept.getNotation(), concept);
+            }
+        }
+        this.hierarchy = ConceptHierarchy.build(broaderRelations);
+        this.labels = new LabelIndex(labels);
+    }
+
+    public ConceptType getConceptType() {
+        return conceptType;
+    }
+
+    /**
+     * @return the concept with its Finnish preferred label, or null if the concept type has no such concept.
+     */
+    public ConceptDTO getConcept(String uri) {
+        return concepts.get(uri);
+    }
+
+    /**
+     * @return the concept with the given skos:notation, or null if the concept type has no such concept.
+     */
+    public ConceptDTO getConceptByNotation(String notation) {
+        return conceptsByNotation.get(notation);
+    }
+
+    public ConceptHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    public LabelIndex getLabels() {
+        return labels;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.index;
+
+/**
+ * A preferred or an alternative label of a concept in one language.
+ */
+public class ConceptLabel {
+    private final String uri;
+    private final String label;
+    private final String language;
+    private final boolean preferred;
+
+    public ConceptLabel(String uri, String label, String language, boolean preferred) {
+        this.uri = uri;
+        this.label = label;
+        this.language = language;
+        this.preferred = preferred;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public boolean isPreferred() {
+        return preferred;
+    }
+
+    @Override
+    public String toString() {
+        return "ConceptLabel [uri=" + uri + ", label=" + label + ", language=" + language
+                + ", preferred=" + preferred + "]";
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix lookup over the normalised preferred and alternative labels of a concept type.
+ * <p>
+ * The labels of each language are kept as one sorted array of normalised keys. This is a flattened prefix trie:
+ * all the labels that share a prefix form one contiguous range, which is found with two binary searches and
+ * read without further allocation.
+ */
+public class LabelIndex {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Preferred labels sort before alternative labels with the same key.
+    private static final Comparator<Entry> ORDER = Comparator.<Entry, String>comparing(e -> e.key)
+            .thenComparing(e -> !e.label.isPreferred())
+            .thenComparing(e -> e.label.getUri());
+
+    private final Map<String, Entry[]> entriesByLanguage = new HashMap<>();
+
+    public LabelIndex(Collection<ConceptLabel> labels) {
+        Map<String, List<Entry>> grouped = new HashMap<>();
+        for (ConceptLabel label : labels) {
+            grouped.computeIfAbsent(label.getLanguage(), l -> new ArrayList<>())
+                    .add(new Entry(normalize(label.getLabel()), label));
+        }
+        grouped.forEach((language, entries) -> {
+            Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+            Arrays.sort(sorted, ORDER);
+            entriesByLanguage.put(language, sorted);
+        });
+    }
+
+    /**
+     * Lower-cases and Unicode normalises the label and collapses its whitespace.
+     */
+    public static String normalize(String label) {
+        String normalized = Normalizer.normalize(label, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+        return WHITESPACE.matcher(normalized).replaceAll(" ");
+    }
+
+    /**
+     * @return at most limit labels of distinct concepts starting with the prefix, in label order.
+     */
+    public List<ConceptLabel> suggest(String prefix, String language, int limit) {
+        Entry[] entries = entriesByLanguage.get(language);
+        if (entries == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String key = normalize(prefix);
+        List<ConceptLabel> result = new ArrayList<>();
+        Set<String> uris = new HashSet<>();
+        for (int i = lowerBound(entries, key); i < entries.length && entries[i].key.startsWith(key); i++) {
+            if (uris.add(entries[i].label.getUri())) {
+                result.add(entries[i].label);
+                if (result.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int lowerBound(Entry[] entries, String key) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid].key.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final ConceptLabel label;
+
+        Entry(String key, ConceptLabel label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+}
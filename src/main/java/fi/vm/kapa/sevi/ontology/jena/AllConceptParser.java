@@ -26,7 +26,8 @@ import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
 import fi.vm.kapa.sevi.service.commons.ConceptType;
 import fi.vm.kapa.sevi.ontology.dto.ViewDTO;
 import fi.vm.kapa.sevi.sparql.SparqlQueryBuilder;
-import org.apache.jena.query.QueryFactory;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.out.NodeFmtLib;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -51,38 +52,48 @@ public class AllConceptParser extends GenericConceptParser {
     }
 
     /**
+     * @return the first concept with exactly the given preferred label, or null if there is none
      * @deprecated
      */
     @Deprecated
     public ConceptDTO getConceptByLabel(String label) {
-        String queryByLabel = new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        if (label == null) {
+            return null;
+        }
+        // The label is a term of the pattern rather than a FILTER, so that it is looked up from the index.
+        String prefLabel = NodeFmtLib.str(NodeFactory.createLiteral(label, lang));
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
-                .select("?uri", "(str(?prefLabel) AS ?label)", "?scheme", "?notation")
+                .select("?uri", "(str(" + prefLabel + ") AS ?label)", "?scheme", "?notation")
+                .where("?uri", "skos:prefLabel", prefLabel)
                 .where("?uri", "a", "skos:Concept")
-                .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
-                .filter("(?prefLabel=\"" + label + "\"@" + lang + ")")
-                .build();
+                .groupBy("?uri")
+                .groupBy("?scheme")
+                .groupBy("?notation");
         LOGGER.info("Find concept type " + conceptType + " by label " + label);
-        Stream<ConceptDTO> concepts = executeNoInferenceQuery(QueryFactory.create(queryByLabel));
-        
-        return concepts.findFirst().orElse(null);
+        try (Stream<ConceptDTO> concepts =
+                     executeQuery(createQuery(selectTranslations(builder, "?uri").build()), QueryKind.LOOKUP)) {
+            return concepts.findFirst().orElse(null);
+        }
     }
 
     @Override
     protected String buildQueryAllConcepts() {
-        String query = new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri", "(str(?prefLabel) AS ?label)", "?scheme", "?notation")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 .where("?uri", "a", "skos:Concept")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
-                .filter("(lang(?prefLabel) = '" + lang + "')").build();
+                .filter("(lang(?prefLabel) = '" + lang + "')")
+                .groupBy("?uri")
+                .groupBy("?prefLabel")
+                .groupBy("?scheme")
+                .groupBy("?notation");
+        String query = selectTranslations(builder, "?uri").build();
 
         LOGGER.debug("builds {} query all Concepts: \n{}", conceptType, query);
 
@@ -91,17 +102,20 @@ public class AllConceptParser extends GenericConceptParser {
 
     @Override
     protected String buildQueryAllTopLevelConcepts() {
-        String query = new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri", "(str(?prefLabel) AS ?label)", "?scheme", "?notation")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 .where("?uri", "a", "skos:Concept")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("?uri", "skos:topConceptOf", "?scheme")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
-                .filter("(lang(?prefLabel) = '" + lang + "')").build();
+                .filter("(lang(?prefLabel) = '" + lang + "')")
+                .groupBy("?uri")
+                .groupBy("?prefLabel")
+                .groupBy("?scheme")
+                .groupBy("?notation");
+        String query = selectTranslations(builder, "?uri").build();
 
         LOGGER.debug("builds {} query all Concepts: \n{}", conceptType, query);
 
@@ -110,28 +124,27 @@ public class AllConceptParser extends GenericConceptParser {
 
     @Override
     protected String buildQueryFindConceptByUri(String uri) {
-        return new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("(str(" + urify(uri) + ") AS ?uri)", "(str(?prefLabel) AS ?label)",
                         "?scheme", "?notation")
-                .filter("NOT EXISTS { " + urify(uri) + " a skosext:DeprecatedConcept }")
                 .where(urify(uri), "a", "skos:Concept")
                 .where(urify(uri), "skos:prefLabel", "?prefLabel")
                 .where(urify(uri), "skos:inScheme", "?scheme")
                 .where("OPTIONAL { " + urify(uri) + " skos:notation ?notation }")
                 .filter("(lang(?prefLabel) = '" + lang + "')")
-                .build();
+                .groupBy("?prefLabel")
+                .groupBy("?scheme")
+                .groupBy("?notation");
+        return selectTranslations(builder, urify(uri)).build();
     }
 
     @Override
     public String buildBroaderQuery(String uri) {
         return new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("DISTINCT ?uri (str(?prefLabel) AS ?label)", "?scheme", "?notation")
                 // This broader relation is transitive and returns all concepts that are one or more levels more general.
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 .where(urify(uri), "skos:broaderTransitive", "?uri")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("?uri", "skos:inScheme", "?scheme")
@@ -151,8 +164,10 @@ public class AllConceptParser extends GenericConceptParser {
      * Fills the leaf nodes with narrower concepts.
      */
     private void fillViewLeaf(ViewDTO leaf) {
-        Stream<ViewDTO> leafs = getNarrowerConceptsByUri(leaf.getId()).map(c -> new ViewDTO(c));
-        List<ViewDTO> leafList = leafs.collect(Collectors.toList());
+        List<ViewDTO> leafList;
+        try (Stream<ConceptDTO> narrower = getNarrowerConceptsByUri(leaf.getId())) {
+            leafList = narrower.map(c -> new ViewDTO(c)).collect(Collectors.toList());
+        }
         leaf.setChildren(leafList);
         for (ViewDTO childLeaf : leafList) {
             fillViewLeaf(childLeaf);
@@ -23,13 +23,17 @@
 package fi.vm.kapa.sevi.ontology.jena;
 
 import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.dto.Language;
+import fi.vm.kapa.sevi.ontology.index.BroaderRelation;
+import fi.vm.kapa.sevi.ontology.index.ConceptLabel;
 import fi.vm.kapa.sevi.service.commons.ConceptType;
 import fi.vm.kapa.sevi.sparql.SparqlQueryBuilder;
 import org.apache.jena.query.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -47,11 +51,11 @@ public abstract class BaseConceptParser implements JenaConceptParser {
 
     protected ConceptType conceptType;
 
-    // Fuseki settings
-    @Value("${environment.fuseki.host}")
-    protected String fusekiHost;
-    @Value("${environment.fuseki.port}")
-    protected String fusekiPort;
+    @Autowired
+    protected FusekiReplicaPool replicas;
+
+    @Autowired
+    protected SchemeGraphs schemeGraphs;
 
     protected abstract  String buildQueryAllConcepts();
 
@@ -59,8 +63,12 @@ public abstract class BaseConceptParser implements JenaConceptParser {
 
     protected abstract String buildQueryFindConceptByUri(String uri);
 
-    protected abstract Stream<ConceptDTO> executeQuery(Query query);
-    protected abstract Stream<ConceptDTO> executeNoInferenceQuery(Query query);
+    protected abstract String buildQueryAllBroaderRelations();
+
+    protected abstract String buildQueryAllLabels();
+
+    protected abstract Stream<ConceptDTO> executeQuery(Query query, QueryKind kind);
+    protected abstract <T> Stream<T> executeQuery(Query query, QueryKind kind, Function<QuerySolution, T> mapper);
 
     public BaseConceptParser(ConceptType conceptType) {
         this.conceptType = conceptType;
@@ -74,20 +82,39 @@ public abstract class BaseConceptParser implements JenaConceptParser {
     @Override
     public ConceptDTO getConceptByUri(String uri) {
         LOGGER.info("Find concept type " + conceptType + " by uri " + uri);
-        Stream<ConceptDTO> concepts = executeQuery(QueryFactory.create(buildQueryFindConceptByUri(uri)));
-        return concepts.findFirst().orElse(null);
+        try (Stream<ConceptDTO> concepts =
+                     executeQuery(createQuery(buildQueryFindConceptByUri(uri)), QueryKind.LOOKUP)) {
+            return concepts.findFirst().orElse(null);
+        }
     }
 
     @Override
     public Stream<ConceptDTO> getConcepts() {
         LOGGER.info("Find all concepts of type " + conceptType);
-        return executeNoInferenceQuery(QueryFactory.create(buildQueryAllConcepts()));
+        return executeQuery(createQuery(buildQueryAllConcepts()), QueryKind.LIST);
     }
 
     @Override
     public Stream<ConceptDTO> getTopLevelConcepts() {
         LOGGER.info("Find all top-level concepts of type " + conceptType);
-        return executeQuery(QueryFactory.create(buildQueryAllTopLevelConcepts()));
+        return executeQuery(createQuery(buildQueryAllTopLevelConcepts()), QueryKind.LIST);
+    }
+
+    @Override
+    public Stream<BroaderRelation> getBroaderRelations() {
+        LOGGER.info("Find all broader relations of type " + conceptType);
+        return executeQuery(createQuery(buildQueryAllBroaderRelations()), QueryKind.BULK,
+                s -> new BroaderRelation(s.getResource("uri").getURI(), s.getResource("broader").getURI()));
+    }
+
+    @Override
+    public Stream<ConceptLabel> getLabels() {
+        LOGGER.info("Find all labels of type " + conceptType);
+        return executeQuery(createQuery(buildQueryAllLabels()), QueryKind.BULK,
+                s -> new ConceptLabel(s.getResource("uri").getURI(),
+                        s.getLiteral("label").getLexicalForm(),
+                        s.getLiteral("label").getLanguage(),
+                        s.getLiteral("preferred").getBoolean()));
     }
 
 
@@ -114,44 +141,46 @@ public abstract class BaseConceptParser implements JenaConceptParser {
      * Note: This is public for the tests' sake.
      */
     public Stream<ConceptDTO> queryModelForBroader(String uri) {
-        String serviceURI = getFusekiSparqlUri();
-        LOGGER.info("QUERY broaderUri: " + uri + ", from " + serviceURI);
+        LOGGER.info("QUERY broaderUri: " + uri);
         String queryString = buildBroaderQueryString(uri);
         LOGGER.info("QUERY STRING: " + queryString);
-        Query query = QueryFactory.create(queryString);
-        return queryModelFor(serviceURI, query);
+        Query query = schemeGraphs.scope(QueryFactory.create(queryString), null);
+        return queryModelFor(query);
     }
 
     private Stream<ConceptDTO> queryModelForNarrower(String uri) {
-        String serviceURI = getFusekiSparqlUri();
-        LOGGER.info("QUERY narrowerUri: " + uri + ", from " + serviceURI);
+        LOGGER.info("QUERY narrowerUri: " + uri);
         String queryString = buildNarrowerQueryString(uri);
-        Query query = QueryFactory.create(queryString);
-        return queryModelFor(serviceURI, query);
+        Query query = schemeGraphs.scope(QueryFactory.create(queryString), null);
+        return queryModelFor(query);
     }
 
-    protected Stream<ConceptDTO> getResultStream(ResultSet results, QueryExecution qexec) {
-        Iterable<ConceptDTO> resultIterator = new ResultIterable(results);
+    /**
+     * Creates the query so that it reads the named graphs of this concept type only.
+     */
+    protected Query createQuery(String queryString) {
+        return schemeGraphs.scope(QueryFactory.create(queryString), conceptType.getInScheme());
+    }
+
+    protected Stream<ConceptDTO> getResultStream(FusekiReplicaPool.Execution execution) {
+        Iterable<ConceptDTO> resultIterator = new ResultIterable(execution.getResults());
         // Filtering out the null results here.
         return StreamSupport.stream(resultIterator.spliterator(), false)
-            .filter(c -> !("".equals(c.getId()))).onClose(() -> qexec.close());
+            .filter(c -> !("".equals(c.getId()))).onClose(execution::close);
     }
     
-    private Stream<ConceptDTO> queryModelFor(String serviceURI, Query query) {
+    private Stream<ConceptDTO> queryModelFor(Query query) {
         // Note: This is closed when the stream is closed. Must not be closed before.
-        QueryExecution qexec = QueryExecutionFactory.sparqlService(serviceURI, query);
-        ResultSet results = qexec.execSelect();
-        Stream<ConceptDTO> concepts = getResultStream(results, qexec);
+        FusekiReplicaPool.Execution execution = replicas.execSelect(query, QueryKind.LOOKUP);
+        Stream<ConceptDTO> concepts = getResultStream(execution);
         return concepts;
     }
 
     private String buildBroaderQueryString(String uri) {
-        return new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri (str(?prefLabel) AS ?label)", "?scheme", "?notation")
                 .where(urify(uri), "skos:broaderTransitive", "?uri")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 // This is used to sort the results.
@@ -162,23 +191,41 @@ public abstract class BaseConceptParser implements JenaConceptParser {
                 .groupBy("?scheme")
                 .groupBy("?prefLabel")
                 .groupBy("?notation")
-                .orderBy("ASC(COUNT(?evenBroader))")
-                .build();
+                // The translations multiply the rows of a concept, so each broader concept is counted once.
+                .orderBy("ASC(COUNT(DISTINCT ?evenBroader))");
+        return selectTranslations(builder, "?uri").build();
     }
 
     private String buildNarrowerQueryString(String uri) {
-        return new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri (str(?prefLabel) AS ?label)", "?scheme", "?notation")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 // Note: Not skos:narrowerTransitive here, we don't want to return all the levels down, only the next one.
                 .where(urify(uri), "skos:narrower", "?uri")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
                 .filter("(lang(?prefLabel) = 'fi')")
-                .build();
+                .groupBy("?uri")
+                .groupBy("?scheme")
+                .groupBy("?prefLabel")
+                .groupBy("?notation");
+        return selectTranslations(builder, "?uri").build();
+    }
+
+    /**
+     * Selects the Swedish and English preferred labels of the subject as the optional ?swedish and ?english
+     * columns. They are pivoted into the row of the Finnish label, so all the languages are read in one scan.
+     * A concept may have more than one label in a language, so each language is sampled down to one value and
+     * the query must group by all its other columns. The query must use the skos prefix.
+     */
+    protected static SparqlQueryBuilder selectTranslations(SparqlQueryBuilder builder, String subject) {
+        return builder
+                .select("(SAMPLE(str(?svLabel)) AS ?swedish)", "(SAMPLE(str(?enLabel)) AS ?english)")
+                .where("OPTIONAL { " + subject + " skos:prefLabel ?svLabel FILTER (lang(?svLabel) = '"
+                        + Language.SV + "') }")
+                .where("OPTIONAL { " + subject + " skos:prefLabel ?enLabel FILTER (lang(?enLabel) = '"
+                        + Language.EN + "') }");
     }
 
     /**
@@ -187,15 +234,13 @@ public abstract class BaseConceptParser implements JenaConceptParser {
      */
     @Deprecated
     private Stream<ConceptDTO> queryModelByLabel(String label, String language) {
-        String serviceURI = getFusekiSparqlUri();
-        LOGGER.info("QUERY label: " + label + ", from " + serviceURI);
+        LOGGER.info("QUERY label: " + label);
         String queryString = buildQueryStringByLabel(label, language);
-        Query query = QueryFactory.create(queryString);
+        Query query = schemeGraphs.scope(QueryFactory.create(queryString), null);
 
         // Note: This is closed when the stream is closed. Must not be closed before.
-        QueryExecution qexec = QueryExecutionFactory.sparqlService(serviceURI, query);
-        ResultSet results = qexec.execSelect();
-        Stream<ConceptDTO> concepts = getResultStream(results, qexec);
+        FusekiReplicaPool.Execution execution = replicas.execSelect(query, QueryKind.LOOKUP);
+        Stream<ConceptDTO> concepts = getResultStream(execution);
 
         return concepts;
     }
@@ -216,12 +261,4 @@ public abstract class BaseConceptParser implements JenaConceptParser {
                 .build();
     }
 
-    protected String getFusekiServiceUri() {
-        return "http://" + fusekiHost + ":" + fusekiPort + "/all";
-    }
-
-    private String getFusekiSparqlUri() {
-        return getFusekiServiceUri() + "/sparql";
-    }
-
 }
@@ -0,0 +1,141 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.update.UpdateAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A TDB dataset in the local file system, which the ontology is loaded into and queried from in this process
+ * instead of Fuseki. It is used if ontology.store.tdb-dir is set, and suits a single instance of the service. The
+ * reads and the writes run in TDB transactions, so the queries see the dataset as it was before or after a write.
+ */
+@Component
+public class EmbeddedTdbStore implements OntologyStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedTdbStore.class);
+
+    @Value("${ontology.store.tdb-dir:}")
+    private String directory;
+
+    private Dataset dataset;
+
+    public EmbeddedTdbStore() {
+        // Spring sets the directory.
+    }
+
+    EmbeddedTdbStore(Dataset dataset) {
+        this.directory = "memory";
+        this.dataset = dataset;
+    }
+
+    @PostConstruct
+    void open() {
+        if (!directory.isEmpty()) {
+            LOGGER.info("Storing the ontology in the embedded TDB dataset {}", directory);
+            dataset = TDBFactory.createDataset(directory);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (dataset != null) {
+            dataset.close();
+        }
+    }
+
+    /**
+     * @return true if the ontology is stored here instead of Fuseki
+     */
+    public boolean isEnabled() {
+        return dataset != null;
+    }
+
+    @Override
+    public String getName() {
+        return "TDB " + directory;
+    }
+
+    @Override
+    public void send(Path triples, String graph, boolean replace) throws IOException {
+        dataset.begin(ReadWrite.WRITE);
+        try (InputStream in = open(triples)) {
+            Model model = graph == null ? dataset.getDefaultModel() : dataset.getNamedModel(graph);
+            if (replace) {
+                model.removeAll();
+            }
+            RDFDataMgr.read(model, in, Lang.NTRIPLES);
+            dataset.commit();
+        } finally {
+            dataset.end();
+        }
+    }
+
+    @Override
+    public void update(String update) {
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            UpdateAction.parseExecute(update, dataset);
+            dataset.commit();
+        } finally {
+            dataset.end();
+        }
+    }
+
+    @Override
+    public <T> T select(Query query, Function<ResultSet, T> reader) {
+        dataset.begin(ReadWrite.READ);
+        try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+            return reader.apply(qexec.execSelect());
+        } finally {
+            dataset.end();
+        }
+    }
+
+    private static InputStream open(Path triples) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(triples));
+        return triples.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+}
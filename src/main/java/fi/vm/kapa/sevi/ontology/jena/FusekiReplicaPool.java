@@ -0,0 +1,366 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * The Fuseki replicas which the ontology is read from. Each query goes to the healthy replica with the fewest
+ * outstanding queries. A replica whose query fails is left out for a while. The lookups can be hedged: if the first
+ * replica has not answered by the time most lookups have, the same lookup is sent to a second replica and the
+ * faster answer is used.
+ * <p>
+ * The replicas are listed in environment.fuseki.replicas as base URIs, for example
+ * {@code http://fuseki1:3030,http://fuseki2:3030}. Without the list the only replica is environment.fuseki.host
+ * and environment.fuseki.port.
+ * <p>
+ * If the embedded TDB dataset is enabled, the queries are executed on it in this process and Fuseki is not used.
+ */
+@Component
+public class FusekiReplicaPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FusekiReplicaPool.class);
+
+    /**
+     * The Fuseki dataset the ontology is stored in. The SKOS inferences are materialised when the ontology is
+     * loaded, so the dataset needs no reasoner.
+     */
+    public static final String DATASET = "all_no_inference";
+
+    // The number of the latest lookup latencies the hedge delay is calculated from.
+    private static final int LATENCY_SAMPLES = 200;
+
+    @Autowired
+    private SparqlCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private EmbeddedTdbStore embeddedStore;
+
+    @Value("${environment.fuseki.host}")
+    private String fusekiHost;
+    @Value("${environment.fuseki.port}")
+    private String fusekiPort;
+    @Value("${environment.fuseki.replicas:}")
+    private String replicaUris;
+
+    @Value("${environment.fuseki.eject-ms:30000}")
+    private long ejectMillis;
+    @Value("${environment.fuseki.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+    @Value("${environment.fuseki.hedge.percentile:95}")
+    private int hedgePercentile;
+    @Value("${environment.fuseki.hedge.min-delay-ms:20}")
+    private long hedgeMinDelayMillis;
+
+    private List<Replica> replicas;
+    private ExecutorService hedgeExecutor;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private int nextLatency;
+
+    public FusekiReplicaPool() {
+        // Spring sets the replicas before the pool is started.
+    }
+
+    FusekiReplicaPool(SparqlCircuitBreaker circuitBreaker, String replicaUris, boolean hedgeEnabled) {
+        this.circuitBreaker = circuitBreaker;
+        this.replicaUris = replicaUris;
+        this.ejectMillis = 30000;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgePercentile = 95;
+        this.hedgeMinDelayMillis = 20;
+        start();
+    }
+
+    FusekiReplicaPool(EmbeddedTdbStore embeddedStore) {
+        this.embeddedStore = embeddedStore;
+        start();
+    }
+
+    @PostConstruct
+    void start() {
+        if (isEmbedded()) {
+            LOGGER.info("Reading the ontology from {}", embeddedStore.getName());
+            replicas = Collections.emptyList();
+            return;
+        }
+        List<String> uris = replicaUris == null || replicaUris.trim().isEmpty()
+                ? Collections.singletonList("http://" + fusekiHost + ":" + fusekiPort)
+                : Arrays.stream(replicaUris.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                        .collect(Collectors.toList());
+        replicas = uris.stream().map(Replica::new).collect(Collectors.toList());
+        LOGGER.info("Reading the ontology from Fuseki replicas {}", uris);
+        if (hedgeEnabled && replicas.size() > 1) {
+            AtomicInteger count = new AtomicInteger();
+            hedgeExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "fuseki-hedge-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the base URIs of all the replicas
+     */
+    public List<String> getBaseUris() {
+        return replicas.stream().map(r -> r.baseUri).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the datasets of all the replicas, or the embedded dataset, for the writes which must reach every one
+     * of them
+     */
+    public List<OntologyStore> getStores() {
+        if (isEmbedded()) {
+            return Collections.singletonList(embeddedStore);
+        }
+        return replicas.stream()
+                .map(r -> new FusekiStore(r.baseUri + "/" + DATASET))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of the queries which have not been closed yet, over all the replicas
+     */
+    int getOutstanding() {
+        return replicas.stream().mapToInt(r -> r.outstanding.get()).sum();
+    }
+
+    private boolean isEmbedded() {
+        return embeddedStore != null && embeddedStore.isEnabled();
+    }
+
+    /**
+     * Executes the select query on one of the replicas. The returned execution must be closed when its results
+     * have been read.
+     *
+     * @throws FusekiUnavailableException if the query fails or the circuit breaker is open
+     */
+    public Execution execSelect(Query query, QueryKind kind) {
+        if (isEmbedded()) {
+            // The transaction ends when the query does, so the results are read before that.
+            return embeddedStore.select(query,
+                    results -> new Execution(null, ResultSetFactory.copyResults(results), () -> { }));
+        }
+        Replica first = choose(null);
+        if (kind != QueryKind.LOOKUP || hedgeExecutor == null) {
+            return execute(first, query, kind);
+        }
+        return executeHedged(first, query);
+    }
+
+    private Execution executeHedged(Replica first, Query query) {
+        CompletableFuture<Execution> primary =
+                CompletableFuture.supplyAsync(() -> execute(first, query, QueryKind.LOOKUP), hedgeExecutor);
+        try {
+            return primary.get(hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.debug("Hedging a slow lookup on {}", first.baseUri);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FusekiUnavailableException("interrupted", e);
+        }
+        Replica second = choose(first);
+        CompletableFuture<Execution> hedge =
+                CompletableFuture.supplyAsync(() -> execute(second, query, QueryKind.LOOKUP), hedgeExecutor);
+        try {
+            return firstSuccessful(primary, hedge).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FusekiUnavailableException("interrupted", e);
+        }
+    }
+
+    /**
+     * Completes with the first execution which succeeds and closes the other one, or fails if both fail.
+     */
+    private static CompletableFuture<Execution> firstSuccessful(CompletableFuture<Execution> a,
+                                                                CompletableFuture<Execution> b) {
+        CompletableFuture<Execution> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<Execution> future : Arrays.asList(a, b)) {
+            future.whenComplete((execution, error) -> {
+                if (error == null) {
+                    if (!result.complete(execution)) {
+                        execution.close();
+                    }
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+        return result;
+    }
+
+    private Execution execute(Replica replica, Query query, QueryKind kind) {
+        String serviceURI = replica.baseUri + "/" + DATASET + "/sparql";
+        QueryExecution qexec = QueryExecutionFactory.sparqlService(serviceURI, query);
+        replica.outstanding.incrementAndGet();
+        long start = System.currentTimeMillis();
+        try {
+            ResultSet results = circuitBreaker.execSelect(qexec, kind);
+            if (kind == QueryKind.LOOKUP) {
+                recordLatency(System.currentTimeMillis() - start);
+            }
+            return new Execution(qexec, results, replica.outstanding::decrementAndGet);
+        } catch (FusekiUnavailableException e) {
+            replica.outstanding.decrementAndGet();
+            // Without a cause the breaker was open and the replica was not asked at all.
+            if (e.getCause() != null) {
+                LOGGER.warn("Leaving Fuseki replica {} out for {}ms", replica.baseUri, ejectMillis);
+                replica.ejectedUntil = System.currentTimeMillis() + ejectMillis;
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            replica.outstanding.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Chooses the healthy replica with the fewest outstanding queries. If every replica has been left out, they
+     * are all tried anyway.
+     */
+    private Replica choose(Replica excluded) {
+        long now = System.currentTimeMillis();
+        Replica best = null;
+        for (Replica replica : replicas) {
+            if (replica != excluded && replica.isHealthy(now)
+                    && (best == null || replica.outstanding.get() < best.outstanding.get())) {
+                best = replica;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        for (Replica replica : replicas) {
+            if (replica != excluded && (best == null || replica.outstanding.get() < best.outstanding.get())) {
+                best = replica;
+            }
+        }
+        return best != null ? best : excluded;
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencies[nextLatency] = millis;
+        nextLatency = (nextLatency + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+    }
+
+    synchronized long hedgeDelayMillis() {
+        if (latencyCount == 0) {
+            return hedgeMinDelayMillis;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = Math.min(latencyCount - 1, latencyCount * hedgePercentile / 100);
+        return Math.max(hedgeMinDelayMillis, sorted[index]);
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        return e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                : new FusekiUnavailableException("lookup failed", e.getCause());
+    }
+
+    private static class Replica {
+        private final String baseUri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile long ejectedUntil;
+
+        Replica(String baseUri) {
+            this.baseUri = baseUri;
+        }
+
+        boolean isHealthy(long now) {
+            return ejectedUntil <= now;
+        }
+    }
+
+    /**
+     * A select query running on one replica. Closing it closes the query execution and lets the replica take
+     * more queries.
+     */
+    public static class Execution implements AutoCloseable {
+        private final QueryExecution qexec;
+        private final ResultSet results;
+        private final Runnable release;
+        private boolean closed;
+
+        private Execution(QueryExecution qexec, ResultSet results, Runnable release) {
+            this.qexec = qexec;
+            this.results = results;
+            this.release = release;
+        }
+
+        public ResultSet getResults() {
+            return results;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release.run();
+                if (qexec != null) {
+                    qexec.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.DatasetCreateException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.update.UpdateExecutionFactory;
+import org.apache.jena.update.UpdateFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * The ontology dataset of one Fuseki replica. The graphs are sent with the Graph Store Protocol.
+ */
+class FusekiStore implements OntologyStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FusekiStore.class);
+
+    private static final String N_TRIPLES = "application/n-triples";
+
+    private final String serviceURI;
+
+    FusekiStore(String serviceURI) {
+        this.serviceURI = serviceURI;
+    }
+
+    @Override
+    public String getName() {
+        return serviceURI;
+    }
+
+    /**
+     * A compressed file is sent as is, with gzip content encoding.
+     *
+     * @throws DatasetCreateException if Fuseki does not accept the upload
+     */
+    @Override
+    public void send(Path triples, String graph, boolean replace) throws IOException {
+        String graphParameter = graph == null ? "default" : "graph=" + URLEncoder.encode(graph, "UTF-8");
+        LOGGER.info("{} Fuseki graph {}. Fuseki url: {}", replace ? "Creating" : "Adding to", graph, serviceURI);
+        String uri = serviceURI + "/data?" + graphParameter;
+        HttpEntityEnclosingRequestBase request = replace ? new HttpPut(uri) : new HttpPost(uri);
+        FileEntity entity = new FileEntity(triples.toFile(), ContentType.create(N_TRIPLES, StandardCharsets.UTF_8));
+        if (triples.getFileName().toString().endsWith(".gz")) {
+            entity.setContentEncoding("gzip");
+        }
+        request.setEntity(entity);
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault();
+             CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == 404 || status == 405) {
+                LOGGER.info("Dataset was not found. Please create " + serviceURI + " dataset");
+            }
+            if (status >= 300) {
+                throw new DatasetCreateException("Error creating dataset",
+                        new HttpResponseException(status, response.getStatusLine().getReasonPhrase()));
+            }
+        }
+        LOGGER.info("Graph sent successfully");
+    }
+
+    @Override
+    public void update(String update) {
+        UpdateExecutionFactory.createRemote(UpdateFactory.create(update), serviceURI + "/update").execute();
+    }
+
+    @Override
+    public <T> T select(Query query, Function<ResultSet, T> reader) {
+        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(serviceURI + "/sparql", query)) {
+            return reader.apply(qexec.execSelect());
+        }
+    }
+}
@@ -26,14 +26,15 @@ import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
 import fi.vm.kapa.sevi.service.commons.ConceptType;
 import fi.vm.kapa.sevi.sparql.SparqlQueryBuilder;
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.QuerySolution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.TimeUnit;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static fi.vm.kapa.sevi.sparql.SparqlQueryBuilder.urify;
 
@@ -46,47 +47,45 @@ public class GenericConceptParser extends BaseConceptParser {
     }
 
     @Override
-    protected Stream<ConceptDTO> executeNoInferenceQuery(Query query) {
-        String serviceURI = "http://" + fusekiHost + ":" + fusekiPort + "/all_no_inference/sparql";
-        LOGGER.debug("Execute query for concept type " + conceptType + ", from " + serviceURI + " with query: " + query.toString());
+    protected Stream<ConceptDTO> executeQuery(Query query, QueryKind kind) {
+        // Note: This is closed when the stream is closed. Must not be closed before.
+        FusekiReplicaPool.Execution execution = execute(query, kind);
+        return getResultStream(execution);
+    }
 
+    @Override
+    protected <T> Stream<T> executeQuery(Query query, QueryKind kind, Function<QuerySolution, T> mapper) {
         // Note: This is closed when the stream is closed. Must not be closed before.
-        QueryExecution qexec = QueryExecutionFactory.sparqlService(serviceURI, query);
-                qexec.setTimeout(120, TimeUnit.MINUTES);
-        ResultSet results = qexec.execSelect();
+        FusekiReplicaPool.Execution execution = execute(query, kind);
 
-        return getResultStream(results, qexec).filter(
-                c -> !c.getScheme().endsWith("/aggregateconceptscheme") &&
-                !c.getScheme().endsWith("/deprecatedconceptscheme"));
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(execution.getResults(), Spliterator.ORDERED), false)
+                .map(mapper)
+                .onClose(execution::close);
     }
 
-    @Override
-    protected Stream<ConceptDTO> executeQuery(Query query) {
-        String serviceURI = "http://" + fusekiHost + ":" + fusekiPort + "/all/sparql";
-        LOGGER.debug("Execute query for concept type " + conceptType + ", from " + serviceURI + " with query: " + query.toString());
+    private FusekiReplicaPool.Execution execute(Query query, QueryKind kind) {
+        LOGGER.debug("Execute query for concept type " + conceptType + " with query: " + query.toString());
 
-        // Note: This is closed when the stream is closed. Must not be closed before.
-        QueryExecution qexec = QueryExecutionFactory.sparqlService(serviceURI, query);
-        qexec.setTimeout(10, TimeUnit.MINUTES);
-        ResultSet results = qexec.execSelect();
-        return getResultStream(results, qexec).filter(
-                c -> !c.getScheme().endsWith("/aggregateconceptscheme") &&
-                !c.getScheme().endsWith("/deprecatedconceptscheme"));
+        return replicas.execSelect(query, kind);
     }
-    
+
     @Override
     protected String buildQueryAllConcepts() {
-        String query = new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri", "(str(?prefLabel) AS ?label)", "?scheme", "?notation")
                 .where("{ VALUES ?scheme { <" + conceptType.getInScheme() + "> } }")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("?uri", "a", "skos:Concept")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
-                .filter("(lang(?prefLabel) = '" + lang + "')").build();
+                .filter("(lang(?prefLabel) = '" + lang + "')")
+                .groupBy("?uri")
+                .groupBy("?prefLabel")
+                .groupBy("?scheme")
+                .groupBy("?notation");
+        String query = selectTranslations(builder, "?uri").build();
 
         LOGGER.debug("builds {} query all Concepts: \n{}", conceptType, query);
 
@@ -95,18 +94,21 @@ public class GenericConceptParser extends BaseConceptParser {
 
     @Override
     protected String buildQueryAllTopLevelConcepts() {
-        String query = new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri", "(str(?prefLabel) AS ?label)", "?scheme", "?notation")
                 .where("{ VALUES ?scheme { <" + conceptType.getInScheme() + "> } }")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 .where("?uri", "skos:inScheme", "?scheme")
                 .where("?uri", "a", "skos:Concept")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
                 .where("?uri", "skos:topConceptOf", "<" + conceptType.getInScheme() + ">")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
-                .filter("(lang(?prefLabel) = '" + lang + "')").build();
+                .filter("(lang(?prefLabel) = '" + lang + "')")
+                .groupBy("?uri")
+                .groupBy("?prefLabel")
+                .groupBy("?scheme")
+                .groupBy("?notation");
+        String query = selectTranslations(builder, "?uri").build();
 
         LOGGER.debug("builds {} query all top-level Concepts: \n{}", conceptType, query);
 
@@ -114,36 +116,68 @@ public class GenericConceptParser extends BaseConceptParser {
     }
 
     @Override
-    protected String buildQueryFindConceptByUri(String uri) {
+    protected String buildQueryAllBroaderRelations() {
         String query = new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
+                .prefix("skos", "http://www.w3.org/2004/02/skos/core")
+                .select("DISTINCT ?uri", "?broader")
+                .where("{ VALUES ?scheme { <" + conceptType.getInScheme() + "> } }")
+                .where("?uri", "skos:inScheme", "?scheme")
+                // The no-inference dataset only has the direction that the source ontology states.
+                .where("{ ?uri skos:broader ?broader } UNION { ?broader skos:narrower ?uri }")
+                .build();
+
+        LOGGER.debug("builds {} query all broader relations: \n{}", conceptType, query);
+
+        return query;
+    }
+
+    @Override
+    protected String buildQueryAllLabels() {
+        String query = new SparqlQueryBuilder()
+                .prefix("skos", "http://www.w3.org/2004/02/skos/core")
+                .select("?uri", "?label", "?preferred")
+                .where("{ VALUES ?scheme { <" + conceptType.getInScheme() + "> } }")
+                .where("?uri", "skos:inScheme", "?scheme")
+                .where("?uri", "a", "skos:Concept")
+                .where("{ ?uri skos:prefLabel ?label BIND(true AS ?preferred) } "
+                        + "UNION { ?uri skos:altLabel ?label BIND(false AS ?preferred) }")
+                .filter("(lang(?label) IN ('fi', 'sv', 'en'))")
+                .build();
+
+        LOGGER.debug("builds {} query all labels: \n{}", conceptType, query);
+
+        return query;
+    }
+
+    @Override
+    protected String buildQueryFindConceptByUri(String uri) {
+        SparqlQueryBuilder builder = new SparqlQueryBuilder()
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("(str(" + urify(uri) + ") AS ?uri)",
                         "(str(?prefLabel) AS ?label)",
                         "?scheme", "?notation")
                 .where("{ VALUES ?scheme { <" + conceptType.getInScheme() + "> } }")
-                .filter("NOT EXISTS { " + urify(uri) + " a skosext:DeprecatedConcept }")
                 .where(urify(uri), "skos:inScheme", "?scheme")
                 .where(urify(uri), "a", "skos:Concept")
                 .where(urify(uri), "skos:prefLabel", "?prefLabel")
                 .where("OPTIONAL { " + urify(uri) + " skos:notation ?notation }")
                 .filter("(lang(?prefLabel) = '" + lang + "')")
-                .build();
+                .groupBy("?prefLabel")
+                .groupBy("?scheme")
+                .groupBy("?notation");
 
-        return query;
+        return selectTranslations(builder, urify(uri)).build();
     }
 
     @Override
     public String buildBroaderQuery(String uri) {
         return new SparqlQueryBuilder()
-                .prefix("skosext", "http://purl.org/finnonto/schema/skosext")
                 .prefix("skos", "http://www.w3.org/2004/02/skos/core")
                 .select("?uri", "(str(?prefLabel) AS ?label)", "?scheme", "?notation")
                 .where("{ VALUES ?scheme { <" + conceptType.getInScheme() + "> } }")
                 .where(urify(uri), "skos:inScheme", "?scheme")
                 .where(urify(uri), "skos:broaderTransitive", "?uri")
                 .where("?uri", "skos:prefLabel", "?prefLabel")
-                .filter("NOT EXISTS { ?uri a skosext:DeprecatedConcept }")
                 // This is used to sort the results.
                 .where("OPTIONAL { ?uri skos:broaderTransitive ?evenBroader }")
                 .where("OPTIONAL { ?uri skos:notation ?notation }")
@@ -0,0 +1,114 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The graphs of the last ontology load as sorted N-Triples files, and the fingerprint of the sources they were
+ * loaded from. The next load compares the new graphs to these, if Fuseki still has the same load.
+ */
+@Component
+public class GraphSnapshots {
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String GRAPHS = "graphs";
+
+    private final Path dir;
+
+    @Autowired
+    public GraphSnapshots(@Value("${ontology.ingest.snapshot-dir:}") String snapshotDir) throws IOException {
+        dir = Files.createDirectories(snapshotDir.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "sevi-ontology-snapshots") : Paths.get(snapshotDir));
+    }
+
+    /**
+     * @return the fingerprint of the sources of the snapshots, or null if there are none
+     */
+    public String getFingerprint() throws IOException {
+        Path file = dir.resolve(FINGERPRINT);
+        return Files.exists(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * @return the names of the graphs of the last load
+     */
+    public List<String> getGraphs() throws IOException {
+        Path file = dir.resolve(GRAPHS);
+        return Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : Collections.emptyList();
+    }
+
+    /**
+     * @return the snapshot of the graph, or null if there is none
+     */
+    public Path get(String graph) {
+        Path file = fileOf(graph);
+        return Files.exists(file) ? file : null;
+    }
+
+    /**
+     * Replaces the snapshots. The fingerprint is written last, so a failed write leaves no fingerprint and the next
+     * load is a full one.
+     *
+     * @param graphs the file of the sorted lines of each graph, or null for a graph which cannot be diffed. The files
+     * are moved into the snapshots.
+     */
+    public void replace(Map<String, Path> graphs, String fingerprint) throws IOException {
+        Files.deleteIfExists(dir.resolve(FINGERPRINT));
+        Set<Path> kept = new HashSet<>();
+        kept.add(Files.write(dir.resolve(GRAPHS), graphs.keySet(), StandardCharsets.UTF_8));
+        for (Map.Entry<String, Path> graph : graphs.entrySet()) {
+            if (graph.getValue() != null) {
+                Path file = fileOf(graph.getKey());
+                Files.move(graph.getValue(), file, StandardCopyOption.REPLACE_EXISTING);
+                kept.add(file);
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!kept.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.write(dir.resolve(FINGERPRINT), fingerprint.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path fileOf(String graph) {
+        return dir.resolve(OntologySourceCache.hash(graph) + ".nt");
+    }
+}
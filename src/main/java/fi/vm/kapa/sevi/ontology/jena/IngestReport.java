@@ -0,0 +1,268 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and statistics of the ontology loads. The load being run is recorded phase by phase and source by
+ * source, and the last finished one is reported by the maintenance API and as metrics. The recording is ignored
+ * when no load is being run, so the phases can be recorded by operations which also run on their own.
+ */
+@Component
+public class IngestReport implements PublicMetrics {
+    private static final String PREFIX = "ontology.ingest.last.";
+
+    private volatile Run current;
+    private volatile Run last;
+
+    /**
+     * Starts recording a load.
+     */
+    public void begin() {
+        current = new Run();
+    }
+
+    /**
+     * Finishes recording the load, which becomes the last one.
+     *
+     * @param failure the reason the load failed, or null if it succeeded
+     */
+    public void end(Throwable failure) {
+        Run run = current;
+        if (run != null) {
+            run.finish(failure);
+            last = run;
+            current = null;
+        }
+    }
+
+    /**
+     * Adds the time since the start to the phase.
+     */
+    public void phase(String name, long startMillis) {
+        Run run = current;
+        if (run != null) {
+            run.phases.merge(name, System.currentTimeMillis() - startMillis, Long::sum);
+        }
+    }
+
+    /**
+     * @return the statistics of the source in the load being run, or a throwaway one if no load is being run
+     */
+    public Source source(String resource) {
+        Run run = current;
+        return run != null ? run.sources.computeIfAbsent(resource, r -> new Source()) : new Source();
+    }
+
+    public void setConceptsPerScheme(Map<String, Long> conceptsPerScheme) {
+        Run run = current;
+        if (run != null) {
+            run.conceptsPerScheme = new TreeMap<>(conceptsPerScheme);
+        }
+    }
+
+    public void addIndexedConcepts(long count) {
+        Run run = current;
+        if (run != null) {
+            run.indexedConcepts.addAndGet(count);
+        }
+    }
+
+    /**
+     * @return the last finished load, or null if there has been none
+     */
+    public Run getLastRun() {
+        return last;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Run run = last;
+        if (run == null) {
+            return Collections.emptyList();
+        }
+        Date timestamp = new Date(run.finishedAt);
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(PREFIX + "succeeded", run.failure == null ? 1 : 0, timestamp));
+        metrics.add(new Metric<>(PREFIX + "duration", run.getDurationMillis(), timestamp));
+        run.getPhases().forEach((phase, millis) -> metrics.add(new Metric<>(PREFIX + "phase." + phase, millis,
+                timestamp)));
+        long bytes = 0;
+        long triplesRead = 0;
+        long triplesStored = 0;
+        long uploadMillis = 0;
+        for (Source source : run.getSources().values()) {
+            bytes += source.getBytes();
+            triplesRead += source.getTriplesRead();
+            triplesStored += source.getTriplesStored();
+            uploadMillis += source.getUploadMillis();
+        }
+        metrics.add(new Metric<>(PREFIX + "bytes", bytes, timestamp));
+        metrics.add(new Metric<>(PREFIX + "triples.read", triplesRead, timestamp));
+        metrics.add(new Metric<>(PREFIX + "triples.stored", triplesStored, timestamp));
+        metrics.add(new Metric<>(PREFIX + "upload", uploadMillis, timestamp));
+        metrics.add(new Metric<>(PREFIX + "concepts",
+                run.getConceptsPerScheme().values().stream().mapToLong(Long::longValue).sum(), timestamp));
+        metrics.add(new Metric<>(PREFIX + "indexed.concepts", run.getIndexedConcepts(), timestamp));
+        metrics.add(new Metric<>(PREFIX + "indexed.per-second", run.getIndexedConceptsPerSecond(), timestamp));
+        return metrics;
+    }
+
+    /**
+     * One ontology load. The phases are in milliseconds and in the order they were first run in.
+     */
+    public static class Run {
+        private final long startedAt = System.currentTimeMillis();
+        private final Map<String, Long> phases = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final Map<String, Source> sources = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final AtomicLong indexedConcepts = new AtomicLong();
+        private volatile Map<String, Long> conceptsPerScheme = Collections.emptyMap();
+        private volatile long finishedAt;
+        private volatile String failure;
+
+        private void finish(Throwable failure) {
+            this.finishedAt = System.currentTimeMillis();
+            this.failure = failure != null ? String.valueOf(failure.getMessage()) : null;
+        }
+
+        public Date getStartedAt() {
+            return new Date(startedAt);
+        }
+
+        public Date getFinishedAt() {
+            return new Date(finishedAt);
+        }
+
+        public long getDurationMillis() {
+            return finishedAt - startedAt;
+        }
+
+        /**
+         * @return the reason the load failed, or null if it succeeded
+         */
+        public String getFailure() {
+            return failure;
+        }
+
+        public Map<String, Long> getPhases() {
+            synchronized (phases) {
+                return new LinkedHashMap<>(phases);
+            }
+        }
+
+        public Map<String, Source> getSources() {
+            synchronized (sources) {
+                return new LinkedHashMap<>(sources);
+            }
+        }
+
+        public Map<String, Long> getConceptsPerScheme() {
+            return conceptsPerScheme;
+        }
+
+        /**
+         * @return the number of the concepts sent to the search index
+         */
+        public long getIndexedConcepts() {
+            return indexedConcepts.get();
+        }
+
+        public long getIndexedConceptsPerSecond() {
+            Long millis = getPhases().get("search-index");
+            return millis == null || millis == 0 ? 0 : indexedConcepts.get() * 1000 / millis;
+        }
+    }
+
+    /**
+     * The statistics of one ontology source. The upload time is summed over the replicas and the chunks.
+     */
+    public static class Source {
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong fetchMillis = new AtomicLong();
+        private final AtomicLong parseMillis = new AtomicLong();
+        private final AtomicLong triplesRead = new AtomicLong();
+        private final AtomicLong triplesStored = new AtomicLong();
+        private final AtomicLong uploadMillis = new AtomicLong();
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes.set(bytes);
+        }
+
+        public long getFetchMillis() {
+            return fetchMillis.get();
+        }
+
+        public void setFetchMillis(long fetchMillis) {
+            this.fetchMillis.set(fetchMillis);
+        }
+
+        public long getParseMillis() {
+            return parseMillis.get();
+        }
+
+        public void setParseMillis(long parseMillis) {
+            this.parseMillis.set(parseMillis);
+        }
+
+        public long getTriplesRead() {
+            return triplesRead.get();
+        }
+
+        public void setTriplesRead(long triplesRead) {
+            this.triplesRead.set(triplesRead);
+        }
+
+        public long getTriplesStored() {
+            return triplesStored.get();
+        }
+
+        public void setTriplesStored(long triplesStored) {
+            this.triplesStored.set(triplesStored);
+        }
+
+        public long getUploadMillis() {
+            return uploadMillis.get();
+        }
+
+        public void addUploadMillis(long millis) {
+            uploadMillis.addAndGet(millis);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.DatasetCreateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the steps of an ontology load in parallel. The sources are read independently of each other, so that one
+ * failing source is only left out. The uploads are limited per target dataset, and the first failing upload cancels
+ * the rest.
+ */
+@Component
+public class IngestScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestScheduler.class);
+
+    private final int threads;
+    private final int concurrencyPerTarget;
+
+    @Autowired
+    public IngestScheduler(@Value("${ontology.ingest.threads:8}") int threads,
+                           @Value("${ontology.ingest.concurrency-per-target:2}") int concurrencyPerTarget) {
+        this.threads = threads;
+        this.concurrencyPerTarget = concurrencyPerTarget;
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        T read(String resource) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Upload {
+        void run() throws Exception;
+    }
+
+    /**
+     * Reads the resources in parallel. A resource which cannot be read is logged and left out of the result.
+     *
+     * @return the results by the resource, in the order of the resources
+     */
+    public <T> Map<String, T> readAll(List<String> resources, Reader<T> reader) {
+        ExecutorService executor = newExecutor("ontology-read");
+        try {
+            Map<String, Future<T>> futures = new LinkedHashMap<>();
+            for (String resource : resources) {
+                futures.put(resource, executor.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    T result = reader.read(resource);
+                    LOGGER.info("Read {} in {}ms", resource, System.currentTimeMillis() - start);
+                    return result;
+                }));
+            }
+            Map<String, T> results = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+                try {
+                    results.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException e) {
+                    LOGGER.error("Error reading " + future.getKey(), e.getCause());
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatasetCreateException("Interrupted while reading the ontologies", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the uploads in parallel, at most concurrency-per-target of them against the same target at a time.
+     * The uploads of a target are started in their order, and none is started after an upload has failed.
+     *
+     * @param uploads the uploads by their target, each named by what it uploads
+     * @throws DatasetCreateException when the first upload fails, after the others have been cancelled
+     */
+    public void uploadAll(Map<String, Map<String, Upload>> uploads) {
+        ExecutorService executor = newExecutor("ontology-upload");
+        CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        List<Future<String>> futures = new ArrayList<>();
+        Map<String, Iterator<Map.Entry<String, Upload>>> pending = new LinkedHashMap<>();
+        uploads.forEach((target, targetUploads) -> pending.put(target, targetUploads.entrySet().iterator()));
+        try {
+            // The next upload of a target is started here when one of its uploads completes, so that the workers
+            // never wait for a turn and an upload failing early is seen before the later ones are started.
+            int running = 0;
+            for (Map.Entry<String, Iterator<Map.Entry<String, Upload>>> target : pending.entrySet()) {
+                for (int i = 0; i < concurrencyPerTarget; i++) {
+                    running += startNext(completion, futures, target.getKey(), target.getValue());
+                }
+            }
+            while (running > 0) {
+                String target = completion.take().get();
+                running += startNext(completion, futures, target, pending.get(target)) - 1;
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e.getCause() instanceof DatasetCreateException ? (DatasetCreateException) e.getCause()
+                    : new DatasetCreateException("Error creating dataset", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatasetCreateException("Interrupted while uploading the ontologies", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return 1 if an upload of the target was started, 0 if the target has no uploads left
+     */
+    private static int startNext(CompletionService<String> completion, List<Future<String>> futures, String target,
+                                 Iterator<Map.Entry<String, Upload>> pending) {
+        if (!pending.hasNext()) {
+            return 0;
+        }
+        Map.Entry<String, Upload> next = pending.next();
+        String name = next.getKey();
+        Upload upload = next.getValue();
+        futures.add(completion.submit(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                upload.run();
+                LOGGER.info("Uploaded {} to {} in {}ms", name, target, System.currentTimeMillis() - start);
+                return target;
+            } catch (Exception e) {
+                throw new DatasetCreateException("Error uploading " + name + " to " + target, e);
+            }
+        }));
+        return 1;
+    }
+
+    private ExecutorService newExecutor(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> new Thread(r, name + "-" + count.incrementAndGet()));
+    }
+}
@@ -23,6 +23,8 @@
 package fi.vm.kapa.sevi.ontology.jena;
 
 import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.index.BroaderRelation;
+import fi.vm.kapa.sevi.ontology.index.ConceptLabel;
 import fi.vm.kapa.sevi.service.commons.ConceptType;
 
 import java.util.stream.Stream;
@@ -39,6 +41,10 @@ public interface JenaConceptParser {
 
     Stream<ConceptDTO> getTopLevelConcepts();
 
+    Stream<BroaderRelation> getBroaderRelations();
+
+    Stream<ConceptLabel> getLabels();
+
     ConceptType getConceptType();
 
     String buildBroaderQuery(String uri);
@@ -22,49 +22,100 @@
  */
 package fi.vm.kapa.sevi.ontology.jena;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpEntityEnclosingRequest;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.jena.atlas.web.HttpException;
-import org.apache.jena.update.UpdateExecutionFactory;
-import org.apache.jena.update.UpdateFactory;
-import org.apache.jena.update.UpdateProcessor;
-import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import fi.vm.kapa.sevi.ontology.exception.ConceptParserException;
 import fi.vm.kapa.sevi.ontology.exception.DatasetCreateException;
 import fi.vm.kapa.sevi.ontology.exception.DatasetDeleteException;
-import fi.vm.kapa.sevi.ontology.exception.OntologyServerException;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 public class JenaOntologyFetcher implements ResourceLoaderAware{
     private static final Logger LOGGER = LoggerFactory.getLogger(JenaOntologyFetcher.class);
 
-    // Fuseki settings
-    @Value("${environment.fuseki.host}")
-    protected String fusekiHost;
-    @Value("${environment.fuseki.port}")
-    protected String fusekiPort;
+    // The fingerprint of the loaded sources is stored in the default graph.
+    static final String LOAD_RESOURCE = "urn:x-sevi:ontology:load";
+    static final String FINGERPRINT_PROPERTY = "urn:x-sevi:ontology:fingerprint";
+    private static final String GENERATION_PROPERTY = "urn:x-sevi:ontology:generation";
+
+    // A shadow load goes into graphs named by the generation, which is the start of the fingerprint.
+    private static final String GENERATION_PREFIX = "urn:x-sevi:ontology:generation:";
+    private static final int GENERATION_LENGTH = 12;
+
+    @Autowired
+    protected FusekiReplicaPool replicas;
+
+    @Autowired
+    protected SchemeGraphs schemeGraphs;
+
+    @Autowired
+    protected IngestScheduler ingestScheduler;
+
+    @Autowired
+    protected OntologySourceCache sourceCache;
+
+    @Autowired
+    protected GraphSnapshots snapshots;
+
+    @Autowired
+    protected IngestReport ingestReport;
+
+    @Value("${ontology.ingest.incremental:true}")
+    private boolean incrementalIngest;
+    @Value("${ontology.ingest.diff-batch-size:5000}")
+    private int diffBatchSize;
+    @Value("${ontology.ingest.shadow-load:true}")
+    private boolean shadowLoad;
+    @Value("${ontology.ingest.max-shrink-percent:50}")
+    private int maxShrinkPercent;
+    @Value("${ontology.ingest.chunk-triples:500000}")
+    private long chunkTriples;
+    // Fuseki must accept gzip content encoding on the Graph Store Protocol for this.
+    @Value("${ontology.ingest.compress:false}")
+    private boolean compressUploads;
 
     // Outbound proxy settings
     @Value("${outbound.httpProxy.enabled:false}")
@@ -78,78 +129,183 @@ public class JenaOntologyFetcher implements ResourceLoaderAware{
 
     private List<String> ontologyResources;
 
-    private InputStream getInputStreamForResource(String resource) throws IOException {
-        InputStream inputStream;
-        if (resource.startsWith("http://")) {
-            inputStream = openInputStreamResource(resource);
+    // The languages of the labels which are stored.
+    private List<String> languages;
+
+    /**
+     * @return the cached content of the resource, named by its hash
+     */
+    private Path fetchResource(String resource) throws IOException {
+        long start = System.currentTimeMillis();
+        Path content;
+        if (resource.startsWith("http://") || resource.startsWith("https://")) {
+            LOGGER.info("{} (Proxy: {} via {}:{})", resource, httpProxyEnabled, httpProxyHost, httpProxyPort);
+            Proxy proxy = httpProxyEnabled
+                    ? new Proxy(Proxy.Type.HTTP, new InetSocketAddress(httpProxyHost, httpProxyPort)) : Proxy.NO_PROXY;
+            content = sourceCache.fetch(resource, proxy);
         } else {
             LOGGER.info("Loading {} with resource loader", resource);
-            inputStream = resourceLoader.getResource(resource).getInputStream();
+            content = sourceCache.store(resource, resourceLoader.getResource(resource).getInputStream());
         }
-        return inputStream;
+        IngestReport.Source source = ingestReport.source(resource);
+        source.setFetchMillis(System.currentTimeMillis() - start);
+        source.setBytes(Files.size(content));
+        return content;
     }
     
     /**
-     * @param ontologyType Either "RDF/XML" or "TURTLE" for example. The format in which the inputstream is in.
-     * @throws IOException 
-     * @throws ClientProtocolException 
-     * @throws DatasetCreateException
-     * @throws ConceptParserException
+     * Reads the fetched ontology into a model.
      */
-    private void createFusekiTDBDatasetForURI(String ontologyResource, String ontologyType, String serviceURI) throws IOException {
-        LOGGER.info("Creating Fuseki dataset. Fuseki url: {}", serviceURI);
-        InputStream inputStream = getInputStreamForResource(ontologyResource);
-        
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        HttpEntityEnclosingRequest uploadFile = new HttpPost(serviceURI + "/upload");
-
-        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-        String filename;
+    protected Model readOntology(String ontologyResource, Path content) throws IOException {
         // If the source is RDF the file extension must be changed here too.
-        if ("TURTLE".equals(ontologyType)) {
-            filename = "file.ttl";
-        } else {
-            filename = "file.rdf";
+        Lang lang = ontologyResource.endsWith(".rdf") ? Lang.RDFXML : Lang.TURTLE;
+        long start = System.currentTimeMillis();
+        Model model = ModelFactory.createDefaultModel();
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(content))) {
+            RDFDataMgr.read(model, inputStream, lang);
         }
-        builder.addBinaryBody("file", inputStream, ContentType.MULTIPART_FORM_DATA, filename);
-        HttpEntity multipart = builder.build();
+        LOGGER.info("Read {}, {} triples", ontologyResource, model.size());
+        IngestReport.Source source = ingestReport.source(ontologyResource);
+        source.setParseMillis(System.currentTimeMillis() - start);
+        source.setTriplesRead(model.size());
+        return model;
+    }
 
-        uploadFile.setEntity(multipart);
+    /**
+     * @return the fingerprint of the sources, which changes if any of them or the pruning of them changes
+     */
+    private String fingerprint(Map<String, Path> contents) {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append("pruning=").append(OntologyPruner.VERSION).append(languages).append('\n');
+        contents.forEach((resource, content) ->
+                fingerprint.append(resource).append('=').append(OntologySourceCache.hashOf(content)).append('\n'));
+        return OntologySourceCache.hash(fingerprint.toString());
+    }
 
-        httpClient.execute((HttpUriRequest) uploadFile);
-        
-        LOGGER.info("Dataset created successfully");
+    /**
+     * @return the name of the graph the source is stored in, in the given generation or in no generation
+     */
+    static String graphName(String generation, String source) {
+        return generation == null ? source : GENERATION_PREFIX + generation + ":" + source;
     }
-    
+
     /**
-     * @param ontologyType Either "RDF/XML" or "TURTLE" for example. The format in which the inputstream is in.
-     * @throws DatasetCreateException
-     * @throws ConceptParserException
+     * @return the load every replica has, or null if they differ or any of them has none
      */
-    protected void createFusekiTDBDataset(String ontologyResource, String ontologyType) {
-        List<String> serviceURIs = getFusekiServiceUris();
-        for (String serviceURI : serviceURIs) {
+    private Load getLoaded() {
+        Query query = QueryFactory.create("SELECT ?fingerprint ?generation WHERE { <" + LOAD_RESOURCE + "> <"
+                + FINGERPRINT_PROPERTY + "> ?fingerprint OPTIONAL { <" + LOAD_RESOURCE + "> <"
+                + GENERATION_PROPERTY + "> ?generation } }");
+        Set<Load> loads = new HashSet<>();
+        for (OntologyStore store : replicas.getStores()) {
             try {
-                createFusekiTDBDatasetForURI(ontologyResource, ontologyType, serviceURI);
-            } catch (HttpException httpException) {
-                if (httpException.getResponseCode() == 405) {
-                    LOGGER.info("Dataset was not found. Please create " + serviceURI + " dataset");
+                Load load = store.select(query, results -> {
+                    if (!results.hasNext()) {
+                        return null;
+                    }
+                    QuerySolution solution = results.next();
+                    return new Load(solution.getLiteral("fingerprint").getLexicalForm(), solution.contains("generation")
+                            ? solution.getLiteral("generation").getLexicalForm() : null);
+                });
+                if (load == null) {
+                    return null;
                 }
-                throw new DatasetCreateException("Error creating dataset", httpException);
-            } catch (Exception e) {
-                throw new DatasetCreateException("Error creating dataset", e);
+                loads.add(load);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not read the loaded fingerprint from {}", store.getName(), e);
+                return null;
+            }
+        }
+        return loads.size() == 1 ? loads.iterator().next() : null;
+    }
+
+    /**
+     * @return the graphs the readers of each replica are pointed to
+     */
+    private Map<String, Set<String>> getMappedGraphs() {
+        Query query = QueryFactory.create("SELECT DISTINCT ?graph WHERE { ?scheme <" + SchemeGraphs.GRAPH_PROPERTY
+                + "> ?graph }");
+        Map<String, Set<String>> graphs = new LinkedHashMap<>();
+        for (OntologyStore store : replicas.getStores()) {
+            graphs.put(store.getName(), store.select(query, JenaOntologyFetcher::graphsOf));
+        }
+        return graphs;
+    }
+
+    private static Set<String> graphsOf(ResultSet results) {
+        Set<String> graphs = new HashSet<>();
+        results.forEachRemaining(solution -> graphs.add(solution.getResource("graph").getURI()));
+        return graphs;
+    }
+
+    /**
+     * Checks the shadow load on every replica before the readers are switched over to it. If it fails the checks,
+     * it is dropped and the live load is left as it is.
+     *
+     * @throws DatasetCreateException if a scheme is missing concepts
+     */
+    private void verifyShadowLoad(Map<String, Long> expected, Collection<String> shadowGraphs,
+                                  Map<String, Set<String>> liveGraphs) {
+        for (OntologyStore store : replicas.getStores()) {
+            Set<String> live = liveGraphs.get(store.getName());
+            Map<String, Long> liveCounts = live.isEmpty() ? new HashMap<>() : SchemeCounts.query(store, live);
+            // A load from before the pruning still has the schemes which are now pruned.
+            liveCounts.keySet().removeIf(OntologyPruner::isExcludedScheme);
+            List<String> problems = SchemeCounts.compare(expected, SchemeCounts.query(store, shadowGraphs),
+                    liveCounts, maxShrinkPercent);
+            if (!problems.isEmpty()) {
+                LOGGER.error("The shadow load on {} failed the checks: {}", store.getName(), problems);
+                dropGraphs(shadowGraphs);
+                throw new DatasetCreateException("The ontology was not switched to, as it failed the checks",
+                        new IllegalStateException(problems.toString()));
+            }
+        }
+        LOGGER.info("The shadow load has the concepts of all the {} schemes", expected.size());
+    }
+
+    private void dropGraphs(Collection<String> graphs) {
+        for (OntologyStore store : replicas.getStores()) {
+            graphs.forEach(graph -> dropGraph(store, graph));
+        }
+    }
+
+    private static void dropGraph(OntologyStore store, String graph) {
+        try {
+            store.update("DROP SILENT GRAPH <" + graph + ">");
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not drop the graph {} from {}", graph, store.getName(), e);
+        }
+    }
+
+    /**
+     * Drops the graphs which are neither read now nor were read before the switch. The graphs of the previous load
+     * are kept until the next one, for the other instances to notice the switch and for the queries running on
+     * them to finish.
+     */
+    private void dropUnusedGraphs(Collection<String> graphs, Map<String, Set<String>> previousGraphs) {
+        Query query = QueryFactory.create("SELECT DISTINCT ?graph WHERE { GRAPH ?graph { } }");
+        for (OntologyStore store : replicas.getStores()) {
+            Set<String> unused;
+            try {
+                unused = store.select(query, JenaOntologyFetcher::graphsOf);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not list the graphs of {}", store.getName(), e);
+                continue;
+            }
+            unused.removeAll(graphs);
+            unused.removeAll(previousGraphs.get(store.getName()));
+            for (String graph : unused) {
+                LOGGER.info("Dropping the unused graph {} from {}", graph, store.getName());
+                dropGraph(store, graph);
             }
         }
     }
 
     public void deleteFusekiTDBDataset() {
-        List<String> serviceURIs = getFusekiServiceUris();
-        for (String serviceURI : serviceURIs) {
+        for (OntologyStore store : replicas.getStores()) {
             try {
-                LOGGER.info("Deleting Fuseki dataset. Fuseki url: " + serviceURI);
-                UpdateRequest request = UpdateFactory.create(buildQueryDeleteAll());
-                UpdateProcessor processor = UpdateExecutionFactory.createRemote(request, serviceURI + "/update");
-                processor.execute();
+                LOGGER.info("Deleting dataset " + store.getName());
+                store.update(buildQueryDeleteAll());
                 LOGGER.info("Dataset deleted successfully");
             } catch (HttpException httpException) {
                 if (httpException.getResponseCode() == 404) {
@@ -161,6 +317,12 @@ public class JenaOntologyFetcher implements ResourceLoaderAware{
                 throw new DatasetDeleteException("Delete dataset error", e);
             }
         }
+        schemeGraphs.update(Collections.emptyMap(), null);
+    }
+
+    @Value("#{'${ontology.ingest.languages:fi,sv,en}'.split(',')}")
+    public void setLanguages(List<String> languages) {
+        this.languages = languages;
     }
 
     @Value("#{'${ontology.finto.ontology-urls}'.split(',')}")
@@ -173,35 +335,330 @@ public class JenaOntologyFetcher implements ResourceLoaderAware{
         this.resourceLoader = resourceLoader;
     }
 
-    public void createFusekiTDBDataset() {
-        addOrCreateFusekiTDBDataset();
+    /**
+     * Reads each ontology into a graph of its own, named by its resource. The SKOS inferences are materialised over
+     * all of them, so that the hierarchy links between the ontologies are closed too. The graphs and the mapping
+     * from the concept schemes to the graphs are uploaded to every replica. The ontologies are read and uploaded
+     * in parallel. An ontology which cannot be read is left out.
+     * <p>
+     * The sources are fetched through a cache. If none of them has changed since the ontology in Fuseki was
+     * loaded, nothing is uploaded. The fingerprint is stored before the caller has rebuilt its indexes, so the
+     * unchanged ontology is reported as loaded again unless the caller has completed them for it. If Fuseki still has the previous load of this instance, only the differences
+     * to it are applied. Otherwise the ontology is loaded in full.
+     * <p>
+     * In the shadow load mode the ontology goes into a new generation of graphs, next to the live one. The
+     * unchanged graphs are copied over in Fuseki. The new generation is checked to have the concepts of every
+     * scheme, and only then the mapping which points the readers to it is replaced, in one request per replica.
+     * The readers see either the whole previous ontology or the whole new one. Without the shadow load the
+     * differences are applied to the live graphs, or the dataset is cleared for a full load.
+     * <p>
+     * Before the inferences, the ontologies are pruned of what the queries do not read, see {@link OntologyPruner}.
+     * <p>
+     * A graph is uploaded as N-Triples in chunks of ontology.ingest.chunk-triples triples. The first chunk of each
+     * graph replaces the graph, and the rest are then added to it side by side.
+     * <p>
+     * The phases of the load and the statistics of each source are recorded in the {@link IngestReport}.
+     *
+     * @param completed the fingerprint of the load the caller has completed the steps after the load for, or null
+     * @return the fingerprint of the ontology loaded, or null if it had not changed since the completed load
+     * @throws DatasetCreateException if an upload fails, after the other uploads have been cancelled
+     */
+    public String createFusekiTDBDataset(String completed) {
+        long start = System.currentTimeMillis();
+        Map<String, Path> contents = ingestScheduler.readAll(ontologyResources, this::fetchResource);
+        try {
+            sourceCache.removeUnused();
+        } catch (IOException e) {
+            LOGGER.warn("Could not clean up the ontology cache", e);
+        }
+        ingestReport.phase("fetch", start);
+        String fingerprint = fingerprint(contents);
+        Load loaded = getLoaded();
+        if (loaded != null && fingerprint.equals(loaded.fingerprint)) {
+            if (fingerprint.equals(completed)) {
+                LOGGER.info("The ontologies have not changed since they were loaded");
+                return null;
+            }
+            LOGGER.info("The ontologies have been loaded, but the steps after the load have not been completed");
+            return fingerprint;
+        }
+
+        try (OntologySpool spool = new OntologySpool(chunkTriples, compressUploads)) {
+            boolean incremental = incrementalIngest && loaded != null
+                    && loaded.fingerprint.equals(snapshots.getFingerprint());
+            String liveGeneration = loaded != null ? loaded.generation : null;
+            String generation = shadowLoad ? fingerprint.substring(0, GENERATION_LENGTH)
+                    : incremental ? liveGeneration : null;
+            Map<String, Set<String>> liveGraphs = shadowLoad ? getMappedGraphs() : Collections.emptyMap();
+            if (!shadowLoad && !incremental) {
+                deleteFusekiTDBDataset();
+            }
+
+            start = System.currentTimeMillis();
+            Map<String, Model> graphs = ingestScheduler.readAll(new ArrayList<>(contents.keySet()),
+                    ontologyResource -> readOntology(ontologyResource, contents.get(ontologyResource)));
+            ingestReport.phase("parse", start);
+            start = System.currentTimeMillis();
+            long pruned = OntologyPruner.prune(graphs.values(), languages);
+            LOGGER.info("Pruned {} triples", pruned);
+            ingestReport.phase("prune", start);
+            start = System.currentTimeMillis();
+            long inferred = addInferences(graphs);
+            LOGGER.info("Materialised {} SKOS triples", inferred);
+            ingestReport.phase("inference", start);
+            graphs.forEach((name, model) -> ingestReport.source(name).setTriplesStored(model.size()));
+            Map<String, Long> conceptsPerScheme = SchemeCounts.of(graphs.values());
+            ingestReport.setConceptsPerScheme(conceptsPerScheme);
+
+            start = System.currentTimeMillis();
+            Map<String, List<String>> graphsByScheme = mapSchemes(graphs, generation);
+            Model mapping = ModelFactory.createDefaultModel();
+            Property graphProperty = mapping.createProperty(SchemeGraphs.GRAPH_PROPERTY);
+            graphsByScheme.forEach((scheme, names) -> names.forEach(
+                    name -> mapping.add(mapping.createResource(scheme), graphProperty, mapping.createResource(name))));
+            mapping.add(mapping.createResource(LOAD_RESOURCE), mapping.createProperty(FINGERPRINT_PROPERTY),
+                    fingerprint);
+            if (generation != null) {
+                mapping.add(mapping.createResource(LOAD_RESOURCE), mapping.createProperty(GENERATION_PROPERTY),
+                        generation);
+            }
+            Path spooledMapping = spool.spool(mapping);
+
+            // Each graph is serialised once, and the same files are sent to every replica. A graph is released as
+            // soon as it has been spooled with its sorted lines, which are kept as the snapshot for the next load.
+            Map<String, Path> lines = new LinkedHashMap<>();
+            Map<String, List<Path>> replaced = new LinkedHashMap<>();
+            for (Iterator<Map.Entry<String, Model>> it = graphs.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Model> graph = it.next();
+                Path sorted = spool.spoolSorted(graph.getValue());
+                lines.put(graph.getKey(), sorted);
+                if (!incremental || sorted == null || snapshots.get(graph.getKey()) == null) {
+                    replaced.put(graph.getKey(), spool.spoolChunks(graph.getValue()));
+                }
+                graph.getValue().close();
+                it.remove();
+            }
+
+            // The mapping goes last, so that it does not point to graphs which are not there yet.
+            List<Map<String, Map<String, IngestScheduler.Upload>>> graphUploads = incremental
+                    ? diffUploads(lines, replaced, spool, liveGeneration, generation)
+                    : uploads(replaced, Collections.emptyMap(), generation);
+            Map<String, Map<String, IngestScheduler.Upload>> mappingUploads = new LinkedHashMap<>();
+            for (OntologyStore store : replicas.getStores()) {
+                mappingUploads.put(store.getName(), Collections.singletonMap("the graph mapping",
+                        () -> store.send(spooledMapping, null, true)));
+            }
+            ingestReport.phase("prepare", start);
+            start = System.currentTimeMillis();
+            graphUploads.forEach(ingestScheduler::uploadAll);
+            ingestReport.phase("upload", start);
+            List<String> loadedGraphs = lines.keySet().stream()
+                    .map(name -> graphName(generation, name)).collect(Collectors.toList());
+            if (shadowLoad) {
+                start = System.currentTimeMillis();
+                verifyShadowLoad(conceptsPerScheme, loadedGraphs, liveGraphs);
+                ingestReport.phase("verify", start);
+            }
+            start = System.currentTimeMillis();
+            ingestScheduler.uploadAll(mappingUploads);
+            schemeGraphs.update(graphsByScheme, fingerprint);
+            snapshots.replace(lines, fingerprint);
+            if (shadowLoad) {
+                dropUnusedGraphs(loadedGraphs, liveGraphs);
+            }
+            ingestReport.phase("switch", start);
+        } catch (IOException e) {
+            throw new DatasetCreateException("Error spooling the ontologies", e);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Compares each graph to its snapshot and applies only the differences. A graph without a snapshot, or with
+     * blank nodes, is replaced in full. If the graphs go into a new generation, the graphs of the live one are
+     * copied there first. Otherwise a graph which is no longer loaded is dropped.
+     */
+    private List<Map<String, Map<String, IngestScheduler.Upload>>> diffUploads(Map<String, Path> lines,
+                                                                              Map<String, List<Path>> replaced,
+                                                                              OntologySpool spool,
+                                                                              String liveGeneration,
+                                                                              String generation) throws IOException {
+        boolean inPlace = Objects.equals(liveGeneration, generation);
+        Map<String, List<Path>> updates = new LinkedHashMap<>();
+        for (String name : lines.keySet()) {
+            if (replaced.containsKey(name)) {
+                continue;
+            }
+            String target = graphName(generation, name);
+            TripleDiff diff = TripleDiff.between(snapshots.get(name), lines.get(name), target, diffBatchSize, spool);
+            LOGGER.info("{}: {} triples removed and {} added, {} concepts changed", name, diff.getRemoved(),
+                    diff.getAdded(), diff.getChangedSubjects());
+            List<Path> graphUpdates = new ArrayList<>();
+            if (!inPlace) {
+                graphUpdates.add(spool.spoolUpdate(
+                        "COPY SILENT <" + graphName(liveGeneration, name) + "> TO <" + target + ">"));
+            }
+            graphUpdates.addAll(diff.getUpdates());
+            if (!graphUpdates.isEmpty()) {
+                updates.put(name, graphUpdates);
+            }
+        }
+        if (inPlace) {
+            for (String name : snapshots.getGraphs()) {
+                if (!lines.containsKey(name)) {
+                    updates.put(name, Collections.singletonList(
+                            spool.spoolUpdate("DROP SILENT GRAPH <" + graphName(generation, name) + ">")));
+                }
+            }
+        }
+        return uploads(replaced, updates, generation);
+    }
+
+    /**
+     * @param replaced the chunks of the graphs which are uploaded in full, by their source
+     * @param updates the files of the updates of the other graphs, by their source
+     * @param generation the generation the graphs go into
+     * @return the uploads to every replica in two rounds: the first replaces the graphs with their first chunks
+     * and applies the updates, and the second adds the rest of the chunks
+     */
+    private List<Map<String, Map<String, IngestScheduler.Upload>>> uploads(Map<String, List<Path>> replaced,
+                                                                          Map<String, List<Path>> updates,
+                                                                          String generation) {
+        Map<String, Map<String, IngestScheduler.Upload>> first = new LinkedHashMap<>();
+        Map<String, Map<String, IngestScheduler.Upload>> rest = new LinkedHashMap<>();
+        for (OntologyStore store : replicas.getStores()) {
+            Map<String, IngestScheduler.Upload> firstUploads = new LinkedHashMap<>();
+            Map<String, IngestScheduler.Upload> restUploads = new LinkedHashMap<>();
+            replaced.forEach((name, chunks) -> {
+                String target = graphName(generation, name);
+                firstUploads.put(target, timed(name, () -> store.send(chunks.get(0), target, true)));
+                for (int i = 1; i < chunks.size(); i++) {
+                    Path chunk = chunks.get(i);
+                    restUploads.put(target + " chunk " + (i + 1), timed(name, () -> store.send(chunk, target, false)));
+                }
+            });
+            updates.forEach((name, graphUpdates) -> firstUploads.put(graphName(generation, name),
+                    timed(name, () -> {
+                        for (Path update : graphUpdates) {
+                            store.update(new String(Files.readAllBytes(update), StandardCharsets.UTF_8));
+                        }
+                    })));
+            first.put(store.getName(), firstUploads);
+            rest.put(store.getName(), restUploads);
+        }
+        return Arrays.asList(first, rest);
     }
 
-    private void addOrCreateFusekiTDBDataset() {
-        for (String ontologyResource : ontologyResources) {
+    /**
+     * @return the upload, which adds the time it takes to the upload time of the source
+     */
+    private IngestScheduler.Upload timed(String source, IngestScheduler.Upload upload) {
+        return () -> {
+            long start = System.currentTimeMillis();
             try {
-                String ontologyType = "TURTLE";
-                if (ontologyResource.endsWith(".rdf")) {
-                    ontologyType = "RDF/XML";
+                upload.run();
+            } finally {
+                ingestReport.source(source).addUploadMillis(System.currentTimeMillis() - start);
+            }
+        };
+    }
+
+    /**
+     * Adds each inferred triple to the graph which describes its subject.
+     *
+     * @return the number of the triples added
+     */
+    private static long addInferences(Map<String, Model> graphs) {
+        if (graphs.isEmpty()) {
+            return 0;
+        }
+        MultiUnion union = new MultiUnion();
+        graphs.values().forEach(model -> union.addGraph(model.getGraph()));
+        Model all = ModelFactory.createModelForGraph(union);
+
+        long added = 0;
+        Map<Resource, Model> owners = new HashMap<>();
+        StmtIterator it = SkosClosure.infer(all).listStatements();
+        try {
+            while (it.hasNext()) {
+                Statement statement = it.next();
+                if (!all.contains(statement)) {
+                    owners.computeIfAbsent(statement.getSubject(), subject -> ownerOf(subject, graphs.values()))
+                            .add(statement);
+                    added++;
                 }
-                createFusekiTDBDataset(ontologyResource, ontologyType);
-            } catch (OntologyServerException e) {
-                LOGGER.error(e.getLocalizedMessage(), e);
             }
+        } finally {
+            it.close();
         }
+        return added;
     }
-    private String buildQueryDeleteAll() {
-        return "CLEAR DEFAULT";
+
+    private static Model ownerOf(Resource subject, Collection<Model> graphs) {
+        for (Model model : graphs) {
+            if (model.contains(subject, null, (RDFNode) null)) {
+                return model;
+            }
+        }
+        for (Model model : graphs) {
+            if (model.containsResource(subject)) {
+                return model;
+            }
+        }
+        return graphs.iterator().next();
     }
 
-    private InputStream openInputStreamResource(String resource) throws IOException {
-        URL url = new URL(resource);
-        LOGGER.info("{} (Proxy: {} via {}:{})", url.toString(), httpProxyEnabled, httpProxyHost, httpProxyPort);
-        InputStream in = httpProxyEnabled ? url.openConnection(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(httpProxyHost, httpProxyPort))).getInputStream() : url.openStream();
-        return in;
+    /**
+     * @return the names of the graphs each concept scheme is in, in the generation
+     */
+    private static Map<String, List<String>> mapSchemes(Map<String, Model> graphs, String generation) {
+        Map<String, List<String>> graphsByScheme = new HashMap<>();
+        graphs.forEach((name, model) -> {
+            Set<String> schemes = new HashSet<>();
+            model.listObjectsOfProperty(SKOS.inScheme).forEachRemaining(scheme -> {
+                if (scheme.isURIResource()) {
+                    schemes.add(scheme.asResource().getURI());
+                }
+            });
+            model.listSubjectsWithProperty(RDF.type, SKOS.ConceptScheme).forEachRemaining(scheme -> {
+                if (scheme.isURIResource()) {
+                    schemes.add(scheme.getURI());
+                }
+            });
+            schemes.forEach(scheme -> graphsByScheme.computeIfAbsent(scheme, s -> new ArrayList<>())
+                    .add(graphName(generation, name)));
+        });
+        return graphsByScheme;
     }
 
-    protected List<String> getFusekiServiceUris() {
-        return Arrays.asList("http://" + fusekiHost + ":" + fusekiPort + "/all", "http://" + fusekiHost + ":" + fusekiPort + "/all_no_inference");
+    private String buildQueryDeleteAll() {
+        return "CLEAR ALL";
+    }
+
+    /**
+     * The fingerprint and the generation of the ontology in Fuseki.
+     */
+    private static final class Load {
+        private final String fingerprint;
+        private final String generation;
+
+        Load(String fingerprint, String generation) {
+            this.fingerprint = fingerprint;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Load)) {
+                return false;
+            }
+            Load other = (Load) o;
+            return fingerprint.equals(other.fingerprint) && Objects.equals(generation, other.generation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fingerprint, generation);
+        }
     }
 }
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Drops what the queries do not read before the ontology is stored. The queries can then take every concept
+ * in the store as it is, without filtering out the deprecated ones row by row. The following are dropped:
+ * <ul>
+ *     <li>the deprecated concepts and every statement about them or referring to them,</li>
+ *     <li>the aggregate and the deprecated concept schemes and the memberships in them,</li>
+ *     <li>the predicates and the types the queries do not use,</li>
+ *     <li>the labels in the languages which are not served.</li>
+ * </ul>
+ */
+final class OntologyPruner {
+
+    /**
+     * Changes whenever the pruning changes, so that the ontology is loaded again.
+     */
+    static final int VERSION = 1;
+
+    static final Resource DEPRECATED_CONCEPT =
+            ResourceFactory.createResource("http://purl.org/finnonto/schema/skosext#DeprecatedConcept");
+
+    private static final Set<Property> PREDICATES = new HashSet<>(Arrays.asList(
+            RDF.type, SKOS.prefLabel, SKOS.altLabel, SKOS.notation, SKOS.inScheme, SKOS.topConceptOf,
+            SKOS.hasTopConcept, SKOS.broader, SKOS.narrower, SKOS.broaderTransitive, SKOS.narrowerTransitive));
+
+    private static final Set<Resource> TYPES = new HashSet<>(Arrays.asList(SKOS.Concept, SKOS.ConceptScheme));
+
+    private OntologyPruner() {
+    }
+
+    /**
+     * @return true if the concepts of the scheme are not served as members of it
+     */
+    static boolean isExcludedScheme(String scheme) {
+        return scheme.endsWith("/aggregateconceptscheme") || scheme.endsWith("/deprecatedconceptscheme");
+    }
+
+    /**
+     * Prunes the graphs. A concept which is marked deprecated in one graph is dropped from all of them.
+     *
+     * @param languages the languages of the labels which are kept
+     * @return the number of the statements dropped
+     */
+    static long prune(Collection<Model> graphs, Collection<String> languages) {
+        Set<Resource> deprecated = new HashSet<>();
+        for (Model model : graphs) {
+            model.listSubjectsWithProperty(RDF.type, DEPRECATED_CONCEPT).forEachRemaining(deprecated::add);
+        }
+        long dropped = 0;
+        for (Model model : graphs) {
+            List<Statement> statements = new ArrayList<>();
+            StmtIterator it = model.listStatements();
+            try {
+                while (it.hasNext()) {
+                    Statement statement = it.next();
+                    if (!isKept(statement, deprecated, languages)) {
+                        statements.add(statement);
+                    }
+                }
+            } finally {
+                it.close();
+            }
+            model.remove(statements);
+            dropped += statements.size();
+        }
+        return dropped;
+    }
+
+    private static boolean isKept(Statement statement, Set<Resource> deprecated, Collection<String> languages) {
+        Resource subject = statement.getSubject();
+        RDFNode object = statement.getObject();
+        if (!PREDICATES.contains(statement.getPredicate())
+                || deprecated.contains(subject) || isExcluded(subject)
+                || object.isResource() && (deprecated.contains(object.asResource()) || isExcluded(object.asResource()))) {
+            return false;
+        }
+        if (statement.getPredicate().equals(RDF.type)) {
+            return TYPES.contains(object);
+        }
+        if (object.isLiteral() && !object.asLiteral().getLanguage().isEmpty()) {
+            String language = object.asLiteral().getLanguage().toLowerCase(Locale.ROOT);
+            int subtag = language.indexOf('-');
+            return languages.contains(subtag < 0 ? language : language.substring(0, subtag));
+        }
+        return true;
+    }
+
+    private static boolean isExcluded(Resource resource) {
+        return resource.isURIResource() && isExcludedScheme(resource.getURI());
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of the ontology sources. The content is stored by its SHA-256 hash, so the name of a cached file
+ * tells whether the source has changed. A remote source is requested with If-None-Match and If-Modified-Since, and
+ * the cached copy is used when the server answers 304 Not Modified. Different sources can be fetched in parallel.
+ */
+@Component
+public class OntologySourceCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OntologySourceCache.class);
+
+    private static final String HASH = "hash";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+
+    private final Path contentDir;
+    private final Path sourceDir;
+
+    @Autowired
+    public OntologySourceCache(@Value("${ontology.ingest.cache-dir:}") String cacheDir) throws IOException {
+        Path root = cacheDir.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "sevi-ontology-cache") : Paths.get(cacheDir);
+        contentDir = Files.createDirectories(root.resolve("content"));
+        sourceDir = Files.createDirectories(root.resolve("sources"));
+    }
+
+    /**
+     * Fetches the remote source, or returns the cached copy if it has not changed.
+     *
+     * @return the cached content, named by its hash
+     */
+    public Path fetch(String resource, Proxy proxy) throws IOException {
+        Properties source = readSource(resource);
+        Path cached = source.containsKey(HASH) ? contentDir.resolve(source.getProperty(HASH)) : null;
+        if (cached != null && !Files.exists(cached)) {
+            cached = null;
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(resource).openConnection(proxy);
+        try {
+            if (cached != null && source.containsKey(ETAG)) {
+                connection.setRequestProperty("If-None-Match", source.getProperty(ETAG));
+            }
+            if (cached != null && source.containsKey(LAST_MODIFIED)) {
+                connection.setRequestProperty("If-Modified-Since", source.getProperty(LAST_MODIFIED));
+            }
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                LOGGER.info("{} has not changed since it was last fetched", resource);
+                return cached;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Fetching " + resource + " failed with status " + status);
+            }
+            Properties fetched = new Properties();
+            setIfPresent(fetched, ETAG, connection.getHeaderField("ETag"));
+            setIfPresent(fetched, LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+            return store(resource, connection.getInputStream(), fetched);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Stores the content of a local source, so that it is hashed like the remote ones. Closes the stream.
+     *
+     * @return the cached content, named by its hash
+     */
+    public Path store(String resource, InputStream in) throws IOException {
+        return store(resource, in, new Properties());
+    }
+
+    /**
+     * @return the hash of the cached content
+     */
+    public static String hashOf(Path content) {
+        return content.getFileName().toString();
+    }
+
+    /**
+     * @return the hash of the text, in the same form as the hashes of the content
+     */
+    public static String hash(String text) {
+        return toHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Path store(String resource, InputStream in, Properties source) throws IOException {
+        Path temp = Files.createTempFile(contentDir, "fetch-", ".tmp");
+        MessageDigest digest = sha256();
+        try (InputStream from = in; OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = from.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        String hash = toHex(digest.digest());
+        Path content = contentDir.resolve(hash);
+        Files.move(temp, content, StandardCopyOption.REPLACE_EXISTING);
+
+        source.setProperty(HASH, hash);
+        try (OutputStream out = Files.newOutputStream(sourceFile(resource))) {
+            source.store(out, resource);
+        }
+        return content;
+    }
+
+    private Properties readSource(String resource) throws IOException {
+        Properties source = new Properties();
+        Path file = sourceFile(resource);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                source.load(in);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Deletes the content which no source refers to any more. This must not run while sources are being fetched.
+     */
+    public void removeUnused() throws IOException {
+        Set<String> used = new HashSet<>();
+        try (Stream<Path> sources = Files.list(sourceDir)) {
+            for (Path file : (Iterable<Path>) sources::iterator) {
+                Properties source = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    source.load(in);
+                }
+                used.add(source.getProperty(HASH));
+            }
+        }
+        try (Stream<Path> contents = Files.list(contentDir)) {
+            for (Path content : (Iterable<Path>) contents::iterator) {
+                String name = content.getFileName().toString();
+                if (!used.contains(name) && !name.endsWith(".tmp")) {
+                    Files.deleteIfExists(content);
+                }
+            }
+        }
+    }
+
+    private Path sourceFile(String resource) {
+        return sourceDir.resolve(hash(resource) + ".properties");
+    }
+
+    private static void setIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Temporary files of one ontology load. A graph is spooled so that it is serialised once however many replicas it
+ * is uploaded to. A large graph is split into chunks of a fixed number of triples, which can be uploaded side by
+ * side, and the chunks can be compressed. Closing the spool deletes the files.
+ */
+class OntologySpool implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OntologySpool.class);
+
+    private final List<Path> files = new CopyOnWriteArrayList<>();
+    private final long chunkTriples;
+    private final boolean compressed;
+
+    /**
+     * @param chunkTriples the number of triples in a chunk
+     * @param compressed whether the chunks are compressed with gzip
+     */
+    OntologySpool(long chunkTriples, boolean compressed) {
+        this.chunkTriples = chunkTriples;
+        this.compressed = compressed;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Writes the model to a single file as N-Triples, for a graph which must be uploaded in one request.
+     */
+    Path spool(Model model) throws IOException {
+        return write(model, Long.MAX_VALUE).get(0);
+    }
+
+    /**
+     * Writes the model as N-Triples, one chunk to a file.
+     *
+     * @return the chunks, at least one even for an empty model
+     */
+    List<Path> spoolChunks(Model model) throws IOException {
+        return write(model, chunkTriples);
+    }
+
+    /**
+     * Writes a SPARQL update to a file, so that it is not held in memory until it has been sent to every replica.
+     */
+    Path spoolUpdate(String update) throws IOException {
+        return Files.write(createFile(".ru"), update.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the triples of the model to a file as sorted N-Triples lines, which two versions of a graph are
+     * compared by. The lines are sorted in runs of a chunk each, and the runs are then merged, so only one run is
+     * held in memory at a time.
+     *
+     * @return the file, or null if the model has blank nodes, which cannot be matched between two versions
+     */
+    Path spoolSorted(Model model) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        List<String> run = new ArrayList<>();
+        ExtendedIterator<Triple> it = model.getGraph().find(Triple.ANY);
+        try {
+            while (it.hasNext()) {
+                Triple triple = it.next();
+                if (triple.getSubject().isBlank() || triple.getObject().isBlank()) {
+                    runs.forEach(this::delete);
+                    return null;
+                }
+                run.add(NodeFmtLib.str(triple) + " .");
+                if (run.size() >= chunkTriples) {
+                    runs.add(writeRun(run));
+                    run.clear();
+                }
+            }
+        } finally {
+            it.close();
+        }
+        if (!run.isEmpty() || runs.isEmpty()) {
+            runs.add(writeRun(run));
+        }
+        return runs.size() == 1 ? runs.get(0) : merge(runs);
+    }
+
+    private Path writeRun(List<String> lines) throws IOException {
+        Collections.sort(lines);
+        return Files.write(createFile(".nt"), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Merges the sorted runs into one sorted file and deletes them.
+     */
+    private Path merge(List<Path> runs) throws IOException {
+        Path merged = createFile(".nt");
+        List<BufferedReader> readers = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(merged, StandardCharsets.UTF_8)) {
+            // The heads of the runs, each with the index of its reader.
+            PriorityQueue<Map.Entry<String, Integer>> heads = new PriorityQueue<>(Map.Entry.comparingByKey());
+            for (Path run : runs) {
+                BufferedReader reader = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+                readers.add(reader);
+                String line = reader.readLine();
+                if (line != null) {
+                    heads.add(new AbstractMap.SimpleImmutableEntry<>(line, readers.size() - 1));
+                }
+            }
+            while (!heads.isEmpty()) {
+                Map.Entry<String, Integer> head = heads.poll();
+                writer.write(head.getKey());
+                writer.newLine();
+                String line = readers.get(head.getValue()).readLine();
+                if (line != null) {
+                    heads.add(new AbstractMap.SimpleImmutableEntry<>(line, head.getValue()));
+                }
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+        runs.forEach(this::delete);
+        return merged;
+    }
+
+    /**
+     * The triples are streamed from the model, so only the one being written is held in the writer.
+     */
+    private List<Path> write(Model model, long triplesPerFile) throws IOException {
+        List<Path> chunks = new ArrayList<>();
+        ExtendedIterator<Triple> it = model.getGraph().find(Triple.ANY);
+        try {
+            do {
+                Path chunk = createFile(compressed ? ".nt.gz" : ".nt");
+                chunks.add(chunk);
+                try (OutputStream out = open(chunk)) {
+                    StreamRDF writer = StreamRDFLib.writer(out);
+                    writer.start();
+                    for (long count = 0; count < triplesPerFile && it.hasNext(); count++) {
+                        writer.triple(it.next());
+                    }
+                    writer.finish();
+                }
+            } while (it.hasNext());
+        } finally {
+            it.close();
+        }
+        return chunks;
+    }
+
+    private OutputStream open(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        return compressed ? new GZIPOutputStream(out, 64 * 1024) : new BufferedOutputStream(out);
+    }
+
+    private Path createFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("ontology-", suffix);
+        files.add(file);
+        return file;
+    }
+
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete {}", file, e);
+        }
+        files.remove(file);
+    }
+
+    @Override
+    public void close() {
+        files.forEach(this::delete);
+    }
+}
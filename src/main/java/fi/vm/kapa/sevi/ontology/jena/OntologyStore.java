@@ -0,0 +1,59 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.ResultSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * A dataset the ontology is loaded into: a Fuseki replica, or the embedded TDB dataset.
+ */
+public interface OntologyStore {
+
+    /**
+     * @return the name of the store for the logs
+     */
+    String getName();
+
+    /**
+     * Sends the spooled N-Triples to the graph. A file named .gz is compressed with gzip.
+     *
+     * @param graph the name of the graph, or null for the default graph
+     * @param replace true to replace the graph, false to add to it
+     */
+    void send(Path triples, String graph, boolean replace) throws IOException;
+
+    /**
+     * Executes the SPARQL update.
+     */
+    void update(String update);
+
+    /**
+     * Executes the select query and reads its results before the query is closed.
+     */
+    <T> T select(Query query, Function<ResultSet, T> reader);
+}
@@ -29,6 +29,14 @@ public class ResultIterator implements Iterator<ConceptDTO> {
         String label = solution.get("?label") != null ? solution.get("?label").toString() : "";
         String notation = solution.get("?notation") != null ? solution.get("?notation").toString() : "";
         String scheme = solution.get("?scheme") != null ? solution.get("?scheme").toString() : "";
-        return new ConceptDTO(uri, label, notation, scheme);
+        ConceptDTO concept = new ConceptDTO(uri, label, notation, scheme);
+        // The translations are optional columns, the Finnish label is kept for the missing ones.
+        if (solution.get("?swedish") != null) {
+            concept.setSwedish(solution.get("?swedish").toString());
+        }
+        if (solution.get("?english") != null) {
+            concept.setEnglish(solution.get("?english").toString());
+        }
+        return concept;
     }
 }
@@ -0,0 +1,123 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.SKOS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The number of the concepts in each concept scheme. A shadow load is compared to what was read from the sources,
+ * and to the load it is about to replace, before the readers are switched over to it.
+ */
+final class SchemeCounts {
+
+    private SchemeCounts() {
+    }
+
+    /**
+     * @return the number of the concepts of each scheme in the graphs
+     */
+    static Map<String, Long> of(Collection<Model> graphs) {
+        Map<String, Set<Resource>> concepts = new HashMap<>();
+        for (Model model : graphs) {
+            StmtIterator it = model.listStatements(null, SKOS.inScheme, (RDFNode) null);
+            try {
+                while (it.hasNext()) {
+                    Statement statement = it.next();
+                    if (statement.getObject().isURIResource()) {
+                        concepts.computeIfAbsent(statement.getObject().asResource().getURI(), s -> new HashSet<>())
+                                .add(statement.getSubject());
+                    }
+                }
+            } finally {
+                it.close();
+            }
+        }
+        Map<String, Long> counts = new HashMap<>();
+        concepts.forEach((scheme, members) -> counts.put(scheme, (long) members.size()));
+        return counts;
+    }
+
+    /**
+     * @return the number of the concepts of each scheme in the graphs of the dataset
+     */
+    static Map<String, Long> query(OntologyStore store, Collection<String> graphs) {
+        Query query = QueryFactory.create("SELECT ?scheme (COUNT(DISTINCT ?concept) AS ?concepts) WHERE { ?concept <"
+                + SKOS.inScheme.getURI() + "> ?scheme FILTER(isIRI(?scheme)) } GROUP BY ?scheme");
+        graphs.forEach(query::addGraphURI);
+        return store.select(query, results -> {
+            Map<String, Long> counts = new HashMap<>();
+            while (results.hasNext()) {
+                QuerySolution solution = results.next();
+                // An empty group is returned as a row without a scheme.
+                if (!solution.contains("scheme")) {
+                    continue;
+                }
+                counts.put(solution.getResource("scheme").getURI(), solution.getLiteral("concepts").getLong());
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Every scheme must have been loaded in full, and none may have shrunk by more than the given share of the
+     * live load. A source which has been truncated or replaced by an error page shows up as a shrunken scheme.
+     *
+     * @param expected the counts read from the sources
+     * @param loaded the counts in the shadow load
+     * @param live the counts in the live load, or an empty map if there is none
+     * @return the problems found, or an empty list if there are none
+     */
+    static List<String> compare(Map<String, Long> expected, Map<String, Long> loaded, Map<String, Long> live,
+                                int maxShrinkPercent) {
+        List<String> problems = new ArrayList<>();
+        expected.forEach((scheme, count) -> {
+            long found = loaded.getOrDefault(scheme, 0L);
+            if (found != count) {
+                problems.add(scheme + ": " + found + " of " + count + " concepts loaded");
+            }
+        });
+        live.forEach((scheme, count) -> {
+            long now = expected.getOrDefault(scheme, 0L);
+            if (now * 100 < count * (100 - maxShrinkPercent)) {
+                problems.add(scheme + ": " + now + " concepts, down from " + count);
+            }
+        });
+        return problems;
+    }
+}
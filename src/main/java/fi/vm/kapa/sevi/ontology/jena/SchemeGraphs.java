@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the concept schemes to the named graphs they are stored in. Each ontology source is loaded into a named graph
+ * of its own, and the mapping is stored in the default graph. The queries of a concept type read only the graphs
+ * of its scheme. The other queries read all the graphs.
+ * <p>
+ * If the ontology has been loaded into the default graph by an earlier version, there is no mapping and the
+ * queries are left as they are.
+ * <p>
+ * The fingerprint of the load is read with the mapping, so every instance sees when any of them has loaded the
+ * ontology again.
+ */
+@Component
+public class SchemeGraphs {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchemeGraphs.class);
+
+    /**
+     * Links a concept scheme to a named graph in the default graph.
+     */
+    public static final String GRAPH_PROPERTY = "urn:x-sevi:ontology:graph";
+
+    @Autowired
+    private FusekiReplicaPool replicas;
+
+    // The mapping may have been changed by another instance, so it is read again after a while.
+    @Value("${ontology.graphs.refresh-ms:60000}")
+    private long refreshMillis;
+
+    private volatile Mapping mapping;
+
+    public SchemeGraphs() {
+        // Spring sets the fields.
+    }
+
+    SchemeGraphs(FusekiReplicaPool replicas, long refreshMillis) {
+        this.replicas = replicas;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Makes the query read the graphs of the scheme, or all the graphs if the scheme is empty or not mapped.
+     */
+    public Query scope(Query query, String scheme) {
+        Map<String, List<String>> mapping = getMapping().graphsByScheme;
+        if (mapping.isEmpty()) {
+            return query;
+        }
+        List<String> graphs = scheme != null ? mapping.get(scheme) : null;
+        if (graphs == null) {
+            Set<String> all = new LinkedHashSet<>();
+            mapping.values().forEach(all::addAll);
+            graphs = new ArrayList<>(all);
+        }
+        graphs.forEach(query::addGraphURI);
+        return query;
+    }
+
+    /**
+     * @return the fingerprint of the ontology loaded, or null if it has not been loaded with one
+     */
+    public String getFingerprint() {
+        return getMapping().fingerprint;
+    }
+
+    /**
+     * Sets the mapping after the ontology has been loaded.
+     */
+    public void update(Map<String, List<String>> graphsByScheme, String fingerprint) {
+        this.mapping = new Mapping(graphsByScheme, fingerprint);
+    }
+
+    private Mapping getMapping() {
+        Mapping current = mapping;
+        if (current == null) {
+            current = load();
+            mapping = current;
+        } else if (System.currentTimeMillis() - current.loadedAt > refreshMillis) {
+            try {
+                current = load();
+                mapping = current;
+            } catch (FusekiUnavailableException e) {
+                LOGGER.warn("Using the earlier graph mapping: {}", e.getMessage());
+            }
+        }
+        return current;
+    }
+
+    private Mapping load() {
+        Query query = QueryFactory.create("SELECT ?scheme ?graph ?fingerprint WHERE { { ?scheme <" + GRAPH_PROPERTY
+                + "> ?graph } UNION { <" + JenaOntologyFetcher.LOAD_RESOURCE + "> <"
+                + JenaOntologyFetcher.FINGERPRINT_PROPERTY + "> ?fingerprint } }");
+        Map<String, List<String>> graphsByScheme = new HashMap<>();
+        String fingerprint = null;
+        try (FusekiReplicaPool.Execution execution = replicas.execSelect(query, QueryKind.LOOKUP)) {
+            ResultSet results = execution.getResults();
+            while (results.hasNext()) {
+                QuerySolution solution = results.next();
+                if (solution.contains("fingerprint")) {
+                    fingerprint = solution.getLiteral("fingerprint").getLexicalForm();
+                } else {
+                    graphsByScheme.computeIfAbsent(solution.getResource("scheme").getURI(), s -> new ArrayList<>())
+                            .add(solution.getResource("graph").getURI());
+                }
+            }
+        }
+        LOGGER.debug("Concept schemes are stored in the graphs {}, fingerprint {}", graphsByScheme, fingerprint);
+        return new Mapping(Collections.unmodifiableMap(graphsByScheme), fingerprint);
+    }
+
+    private static final class Mapping {
+        private final Map<String, List<String>> graphsByScheme;
+        private final String fingerprint;
+        private final long loadedAt = System.currentTimeMillis();
+
+        Mapping(Map<String, List<String>> graphsByScheme, String fingerprint) {
+            this.graphsByScheme = graphsByScheme;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
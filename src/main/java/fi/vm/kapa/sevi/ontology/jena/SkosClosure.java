@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.SKOS;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds to the model the SKOS triples which the queries rely on, so that they can be answered without inference:
+ * <ul>
+ *     <li>skos:broader and skos:narrower as the inverses of each other,</li>
+ *     <li>skos:broaderTransitive and skos:narrowerTransitive as the transitive closure of them,</li>
+ *     <li>skos:topConceptOf and skos:hasTopConcept as the inverses of each other, and skos:inScheme for the
+ *     top concepts.</li>
+ * </ul>
+ */
+public final class SkosClosure {
+
+    private SkosClosure() {
+    }
+
+    /**
+     * @return the number of the triples added
+     */
+    public static long materialize(Model model) {
+        long before = model.size();
+        model.add(infer(model));
+        return model.size() - before;
+    }
+
+    /**
+     * Infers the triples without changing the model, so that the model can be a read-only union of several.
+     *
+     * @return the inferred triples, some of which may already be in the model
+     */
+    public static Model infer(Model model) {
+        Model inferred = ModelFactory.createDefaultModel();
+        addInverse(model, inferred, SKOS.broader, SKOS.narrower);
+        addInverse(model, inferred, SKOS.narrower, SKOS.broader);
+        addInverse(model, inferred, SKOS.topConceptOf, SKOS.hasTopConcept);
+        addInverse(model, inferred, SKOS.hasTopConcept, SKOS.topConceptOf);
+        copy(model, inferred, SKOS.topConceptOf, SKOS.inScheme, false);
+        copy(model, inferred, SKOS.hasTopConcept, SKOS.inScheme, true);
+
+        Map<Resource, Set<Resource>> parents = new HashMap<>();
+        addEdges(model, parents, SKOS.broader, false);
+        addEdges(model, parents, SKOS.narrower, true);
+        addEdges(model, parents, SKOS.broaderTransitive, false);
+        addEdges(model, parents, SKOS.narrowerTransitive, true);
+        for (Resource concept : parents.keySet()) {
+            for (Resource ancestor : ancestors(concept, parents)) {
+                inferred.add(concept, SKOS.broaderTransitive, ancestor);
+                inferred.add(ancestor, SKOS.narrowerTransitive, concept);
+            }
+        }
+        return inferred;
+    }
+
+    private static void addInverse(Model model, Model inferred, Property property, Property inverse) {
+        StmtIterator it = model.listStatements(null, property, (RDFNode) null);
+        try {
+            while (it.hasNext()) {
+                Statement statement = it.next();
+                if (statement.getObject().isResource()) {
+                    inferred.add(statement.getObject().asResource(), inverse, statement.getSubject());
+                }
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    private static void copy(Model model, Model inferred, Property property, Property superProperty,
+                             boolean inverse) {
+        StmtIterator it = model.listStatements(null, property, (RDFNode) null);
+        try {
+            while (it.hasNext()) {
+                Statement statement = it.next();
+                if (!inverse) {
+                    inferred.add(statement.getSubject(), superProperty, statement.getObject());
+                } else if (statement.getObject().isResource()) {
+                    inferred.add(statement.getObject().asResource(), superProperty, statement.getSubject());
+                }
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    private static void addEdges(Model model, Map<Resource, Set<Resource>> parents, Property property,
+                                 boolean inverse) {
+        StmtIterator it = model.listStatements(null, property, (RDFNode) null);
+        try {
+            while (it.hasNext()) {
+                Statement statement = it.next();
+                if (!statement.getObject().isResource()) {
+                    continue;
+                }
+                Resource child = inverse ? statement.getObject().asResource() : statement.getSubject();
+                Resource parent = inverse ? statement.getSubject() : statement.getObject().asResource();
+                parents.computeIfAbsent(child, c -> new HashSet<>()).add(parent);
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Walks up the hierarchy breadth first. The visited set keeps the walk finite if the hierarchy has cycles.
+     */
+    private static Set<Resource> ancestors(Resource concept, Map<Resource, Set<Resource>> parents) {
+        Set<Resource> ancestors = new LinkedHashSet<>();
+        Deque<Resource> queue = new ArrayDeque<>(parents.get(concept));
+        while (!queue.isEmpty()) {
+            Resource next = queue.poll();
+            if (!next.equals(concept) && ancestors.add(next)) {
+                queue.addAll(parents.getOrDefault(next, new HashSet<>()));
+            }
+        }
+        return ancestors;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the SPARQL queries with the timeout of their kind and keeps track of the outcomes of the latest queries.
+ * When too many of them fail or are slow, the breaker opens and the queries fail fast with
+ * {@link FusekiUnavailableException} instead of waiting for Fuseki. After a while one trial query is let through,
+ * and the breaker closes again if it succeeds.
+ * <p>
+ * Only the read queries go through the breaker. The SPARQL updates and the Graph Store uploads of an ontology load
+ * are not guarded: a failed load is reported and run again as a whole, and its failures must not open the breaker
+ * for the readers.
+ */
+@Component
+public class SparqlCircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SparqlCircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private enum Outcome { SUCCESS, SLOW, FAILURE }
+
+    private final Map<QueryKind, Long> timeoutMillis = new EnumMap<>(QueryKind.class);
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final int slowCallRatePercent;
+    private final long openMillis;
+
+    // The outcomes of the latest calls as a ring buffer.
+    private final Outcome[] outcomes;
+    private int next;
+    private int calls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialRunning;
+
+    @Autowired
+    public SparqlCircuitBreaker(@Value("${ontology.sparql.timeout.lookup-ms:10000}") long lookupTimeoutMillis,
+                                @Value("${ontology.sparql.timeout.list-ms:600000}") long listTimeoutMillis,
+                                @Value("${ontology.sparql.timeout.bulk-ms:7200000}") long bulkTimeoutMillis,
+                                @Value("${ontology.sparql.breaker.window:50}") int window,
+                                @Value("${ontology.sparql.breaker.minimum-calls:10}") int minimumCalls,
+                                @Value("${ontology.sparql.breaker.failure-rate:50}") int failureRatePercent,
+                                @Value("${ontology.sparql.breaker.slow-call-rate:80}") int slowCallRatePercent,
+                                @Value("${ontology.sparql.breaker.open-ms:30000}") long openMillis) {
+        timeoutMillis.put(QueryKind.LOOKUP, lookupTimeoutMillis);
+        timeoutMillis.put(QueryKind.LIST, listTimeoutMillis);
+        timeoutMillis.put(QueryKind.BULK, bulkTimeoutMillis);
+        this.outcomes = new Outcome[window];
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Executes the select query with the timeout of its kind. The query execution is closed if it fails.
+     *
+     * @throws FusekiUnavailableException if the breaker is open, or the query times out or fails in Fuseki
+     */
+    public ResultSet execSelect(QueryExecution qexec, QueryKind kind) {
+        if (!acquirePermission()) {
+            qexec.close();
+            throw new FusekiUnavailableException("circuit breaker is open");
+        }
+        long timeout = timeoutMillis.get(kind);
+        qexec.setTimeout(timeout, TimeUnit.MILLISECONDS);
+        long start = System.currentTimeMillis();
+        try {
+            ResultSet results = qexec.execSelect();
+            // A call taking over half of its budget is about to time out.
+            record(System.currentTimeMillis() - start > timeout / 2 ? Outcome.SLOW : Outcome.SUCCESS);
+            return results;
+        } catch (QueryExceptionHTTP | QueryCancelledException e) {
+            record(Outcome.FAILURE);
+            qexec.close();
+            throw new FusekiUnavailableException(kind + " query failed", e);
+        } catch (RuntimeException e) {
+            // Not a failure of Fuseki, so only the trial slot is given back.
+            releaseTrial();
+            throw e;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private synchronized boolean acquirePermission() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (state == State.HALF_OPEN && !trialRunning) {
+            trialRunning = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    private synchronized void releaseTrial() {
+        trialRunning = false;
+    }
+
+    private synchronized void record(Outcome outcome) {
+        if (state == State.HALF_OPEN) {
+            if (outcome == Outcome.SUCCESS) {
+                LOGGER.info("Closing the SPARQL circuit breaker");
+                state = State.CLOSED;
+                calls = 0;
+                next = 0;
+            } else {
+                open();
+            }
+            return;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        calls = Math.min(calls + 1, outcomes.length);
+        if (state == State.CLOSED && calls >= minimumCalls) {
+            int failures = 0;
+            int slow = 0;
+            for (int i = 0; i < calls; i++) {
+                if (outcomes[i] == Outcome.FAILURE) {
+                    failures++;
+                } else if (outcomes[i] == Outcome.SLOW) {
+                    slow++;
+                }
+            }
+            if (failures * 100 >= failureRatePercent * calls || slow * 100 >= slowCallRatePercent * calls) {
+                LOGGER.warn("{} of the last {} SPARQL queries failed and {} were slow", failures, calls, slow);
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        LOGGER.warn("Opening the SPARQL circuit breaker for {}ms", openMillis);
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+}
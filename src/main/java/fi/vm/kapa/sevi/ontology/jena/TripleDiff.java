@@ -0,0 +1,168 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The difference between two versions of a graph as SPARQL updates. The versions are compared as sorted N-Triples
+ * lines, which are read from files line by line, and the differing lines are spooled into batches of updates as they
+ * are found, so a large difference is not held in memory.
+ */
+final class TripleDiff {
+
+    private final List<Path> updates;
+    private final long removed;
+    private final long added;
+    private final long changedSubjects;
+
+    private TripleDiff(List<Path> updates, long removed, long added, long changedSubjects) {
+        this.updates = updates;
+        this.removed = removed;
+        this.added = added;
+        this.changedSubjects = changedSubjects;
+    }
+
+    /**
+     * Compares the sorted snapshot of the earlier version to the sorted lines of the new one, see
+     * {@link OntologySpool#spoolSorted}.
+     *
+     * @param graph the graph the updates apply the difference to
+     * @param batchSize the largest number of triples in an update
+     */
+    static TripleDiff between(Path snapshot, Path lines, String graph, int batchSize, OntologySpool spool)
+            throws IOException {
+        Batches deletions = new Batches("DELETE DATA", graph, batchSize, spool);
+        Batches insertions = new Batches("INSERT DATA", graph, batchSize, spool);
+        long changedSubjects = 0;
+        String lastSubject = null;
+        try (BufferedReader previousReader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8);
+             BufferedReader currentReader = Files.newBufferedReader(lines, StandardCharsets.UTF_8)) {
+            String previous = previousReader.readLine();
+            String current = currentReader.readLine();
+            while (previous != null || current != null) {
+                int order = previous == null ? 1 : current == null ? -1 : previous.compareTo(current);
+                String changed;
+                if (order < 0) {
+                    changed = previous;
+                    deletions.add(previous);
+                    previous = previousReader.readLine();
+                } else if (order > 0) {
+                    changed = current;
+                    insertions.add(current);
+                    current = currentReader.readLine();
+                } else {
+                    previous = previousReader.readLine();
+                    current = currentReader.readLine();
+                    continue;
+                }
+                // The changes come in the order of the lines, so the lines of a subject are next to each other.
+                String subject = changed.substring(0, changed.indexOf(' '));
+                if (!subject.equals(lastSubject)) {
+                    changedSubjects++;
+                    lastSubject = subject;
+                }
+            }
+        }
+        List<Path> updates = new ArrayList<>(deletions.finish());
+        updates.addAll(insertions.finish());
+        return new TripleDiff(updates, deletions.lines, insertions.lines, changedSubjects);
+    }
+
+    boolean isEmpty() {
+        return updates.isEmpty();
+    }
+
+    long getRemoved() {
+        return removed;
+    }
+
+    long getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the number of the subjects whose triples changed
+     */
+    long getChangedSubjects() {
+        return changedSubjects;
+    }
+
+    /**
+     * @return the files of the SPARQL updates which apply the difference to the graph, the deletions first
+     */
+    List<Path> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Spools the lines into updates of one operation, at most batchSize triples in each.
+     */
+    private static final class Batches {
+        private final String operation;
+        private final String graph;
+        private final int batchSize;
+        private final OntologySpool spool;
+        private final List<Path> updates = new ArrayList<>();
+        private StringBuilder update;
+        private int batchLines;
+        private long lines;
+
+        Batches(String operation, String graph, int batchSize, OntologySpool spool) {
+            this.operation = operation;
+            this.graph = graph;
+            this.batchSize = batchSize;
+            this.spool = spool;
+        }
+
+        void add(String line) throws IOException {
+            if (update == null) {
+                update = new StringBuilder(operation).append(" { GRAPH <").append(graph).append("> {\n");
+            }
+            update.append(line).append('\n');
+            lines++;
+            if (++batchLines == batchSize) {
+                flush();
+            }
+        }
+
+        List<Path> finish() throws IOException {
+            if (update != null) {
+                flush();
+            }
+            return updates;
+        }
+
+        private void flush() throws IOException {
+            updates.add(spool.spoolUpdate(update.append("} }").toString()));
+            update = null;
+            batchLines = 0;
+        }
+    }
+}
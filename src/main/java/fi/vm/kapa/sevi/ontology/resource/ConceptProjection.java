@@ -0,0 +1,122 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import fi.vm.kapa.sevi.configuration.CustomObjectMapper;
+import fi.vm.kapa.sevi.ontology.dto.AbstractDTO;
+import fi.vm.kapa.sevi.ontology.exception.InvalidParameterException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * The properties written of each concept in a list response, selected with the fields and compact parameters:
+ * <ul>
+ * <li>fields=id,label,... writes only the given properties, the id is always included.</li>
+ * <li>compact=true writes only the id, label, notation and conceptType, leaving out the language copies of the
+ * label and the scheme.</li>
+ * <li>compact=uris writes a bare list of the concept URIs.</li>
+ * </ul>
+ */
+public final class ConceptProjection {
+
+    public static final ConceptProjection FULL = new ConceptProjection(null, false);
+
+    private static final String ID = "id";
+    private static final String URIS = "uris";
+    private static final Set<String> PROPERTIES = new LinkedHashSet<>(Arrays.asList(
+            ID, "label", "finnish", "swedish", "english", "notation", "scheme", "conceptType"));
+    private static final Set<String> COMPACT_PROPERTIES = new LinkedHashSet<>(Arrays.asList(
+            ID, "label", "notation", "conceptType"));
+
+    // Null when all the properties are written.
+    private final Set<String> properties;
+    private final boolean urisOnly;
+
+    private ConceptProjection(Set<String> properties, boolean urisOnly) {
+        this.properties = properties;
+        this.urisOnly = urisOnly;
+    }
+
+    /**
+     * @param fields comma separated property names or null
+     * @param compact true, false, uris or null
+     */
+    public static ConceptProjection of(String fields, String compact) {
+        if (URIS.equalsIgnoreCase(compact)) {
+            return new ConceptProjection(null, true);
+        }
+        if (fields != null && !fields.trim().isEmpty()) {
+            Set<String> selected = new TreeSet<>(Collections.singleton(ID));
+            for (String field : fields.split(",")) {
+                String property = field.trim();
+                if (!PROPERTIES.contains(property)) {
+                    throw new InvalidParameterException("fields", property);
+                }
+                selected.add(property);
+            }
+            return new ConceptProjection(selected, false);
+        }
+        if (compact == null || "false".equalsIgnoreCase(compact)) {
+            return FULL;
+        }
+        if ("true".equalsIgnoreCase(compact)) {
+            return new ConceptProjection(COMPACT_PROPERTIES, false);
+        }
+        throw new InvalidParameterException("compact", compact);
+    }
+
+    /**
+     * @return the concepts, or their URIs in the URIs-only mode
+     */
+    public Object apply(List<? extends AbstractDTO> concepts) {
+        if (urisOnly) {
+            return concepts.stream().map(AbstractDTO::getId).collect(Collectors.toList());
+        }
+        return concepts;
+    }
+
+    public ObjectWriter writer(ObjectMapper mapper) {
+        if (properties == null) {
+            return mapper.writer();
+        }
+        return mapper.writer(new SimpleFilterProvider().addFilter(CustomObjectMapper.PROJECTION_FILTER,
+                SimpleBeanPropertyFilter.filterOutAllExcept(properties)));
+    }
+
+    /**
+     * @return a string identifying the projection in the cache keys
+     */
+    public String getKey() {
+        return urisOnly ? URIS : properties == null ? "" : String.join(",", properties);
+    }
+}
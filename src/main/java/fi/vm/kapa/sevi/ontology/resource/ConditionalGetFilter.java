@@ -0,0 +1,95 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.ontology.service.OntologyService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Answers the GET requests of {@link DatasetVersioned} resources with 304 Not Modified when the client already has
+ * the response of the current dataset version, and adds the ETag and Cache-Control headers to the full responses.
+ * <p>
+ * The ETag is built from the dataset version, which changes whenever the ontologies are reloaded or the caches
+ * are evicted, and from the request URI and the accepted media types and encodings. The responses vary by the same
+ * headers, which the Vary header tells the shared caches.
+ */
+@Component
+@DatasetVersioned
+public class ConditionalGetFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    /**
+     * The request headers the format and the encoding of a response are negotiated with.
+     */
+    public static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private static final String ENTITY_TAG_PROPERTY = ConditionalGetFilter.class.getName() + ".entityTag";
+
+    @Inject
+    private OntologyService ontologyService;
+
+    @Value("${ontology.http.cache-control:no-cache}")
+    private String cacheControl;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            return;
+        }
+        EntityTag entityTag = buildEntityTag(request);
+        request.setProperty(ENTITY_TAG_PROPERTY, entityTag);
+        Response.ResponseBuilder notModified = request.getRequest().evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            request.abortWith(notModified.header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                    .header(HttpHeaders.VARY, VARY).build());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object entityTag = request.getProperty(ENTITY_TAG_PROPERTY);
+        if (entityTag != null && response.getStatus() == Response.Status.OK.getStatusCode()) {
+            response.getHeaders().putSingle(HttpHeaders.ETAG, entityTag);
+            response.getHeaders().putSingle(HttpHeaders.CACHE_CONTROL, cacheControl);
+            response.getHeaders().putSingle(HttpHeaders.VARY, VARY);
+        }
+    }
+
+    private EntityTag buildEntityTag(ContainerRequestContext request) {
+        String variant = request.getUriInfo().getRequestUri().toString() + '|'
+                + request.getAcceptableMediaTypes().toString() + '|'
+                + request.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        return new EntityTag(ontologyService.getDatasetVersion() + '-'
+                + Integer.toHexString(variant.hashCode()));
+    }
+}
@@ -24,6 +24,7 @@ package fi.vm.kapa.sevi.ontology.resource;
 
 import fi.vm.kapa.sevi.service.commons.ConceptType;
 import fi.vm.kapa.sevi.ontology.exception.OntologyException;
+import fi.vm.kapa.sevi.ontology.jena.IngestReport;
 import fi.vm.kapa.sevi.ontology.service.OntologyService;
 import fi.vm.kapa.sevi.ontology.service.indexing.IndexMappingService;
 
@@ -58,6 +59,9 @@ public class OntologyMaintenanceResource {
     @Inject
     private IndexMappingService indexMappingService;
 
+    @Inject
+    private IngestReport ingestReport;
+
     private ExecutorService executor = Executors.newFixedThreadPool(1);
     
     @PUT
@@ -138,6 +142,16 @@ public class OntologyMaintenanceResource {
         runUpdateAsync(asyncResp, ontologyService::fetchAndIndexConcepts);
     }
 
+    @GET
+    @Path("/import/report")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns the timings and statistics of the last ontology load, or no content if there has "
+        + "been none", response = IngestReport.Run.class)
+    public Response getImportReport() {
+        IngestReport.Run run = ingestReport.getLastRun();
+        return run != null ? Response.ok(run).build() : Response.noContent().build();
+    }
+
     @DELETE
     @Path("/delete/all")
     @Produces(MediaType.APPLICATION_JSON)
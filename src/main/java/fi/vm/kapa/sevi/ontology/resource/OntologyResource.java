@@ -23,6 +23,9 @@
 package fi.vm.kapa.sevi.ontology.resource;
 
 import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.dto.ConceptPathDTO;
+import fi.vm.kapa.sevi.ontology.dto.NarrowerCheckDTO;
+import fi.vm.kapa.sevi.ontology.exception.InvalidParameterException;
 import fi.vm.kapa.sevi.service.commons.ConceptType;
 import fi.vm.kapa.sevi.ontology.service.OntologyService;
 import org.slf4j.Logger;
@@ -33,19 +36,31 @@ import com.wordnik.swagger.annotations.ApiOperation;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Api("Ontology")
 @Path("/v1")
+@DatasetVersioned
 public class OntologyResource {
     private static final Logger LOGGER = LoggerFactory.getLogger(OntologyResource.class);
 
     @Inject
     private OntologyService ontologyService;
 
+    @Inject
+    private SerializedResponseCache responseCache;
+
+    @Inject
+    private ReadRequestExecutor readExecutor;
+
     @GET
     @Path("/types")
     @Produces(MediaType.APPLICATION_JSON)
@@ -58,9 +73,9 @@ public class OntologyResource {
     @Path("/concept")
     @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(value = "Returns the concept for a specific URI", response = ConceptDTO.class)
-    public ConceptDTO findConcept(@QueryParam("uri") final String uri) {
+    public void findConcept(@Suspended final AsyncResponse asyncResponse, @QueryParam("uri") final String uri) {
         LOGGER.debug("Finding concept {}", uri);
-        return ontologyService.getConcept(uri);
+        readExecutor.execute(asyncResponse, () -> ontologyService.getConcept(uri));
     }
 
     /**
@@ -74,57 +89,214 @@ public class OntologyResource {
     @ApiOperation(value = "Returns the concept for a specific label", response = ConceptDTO.class)
     // Use search-service API, it is more efficient.
     @Deprecated
-    public ConceptDTO findConceptByLabel(@QueryParam("label") final String label) {
+    public void findConceptByLabel(@Suspended final AsyncResponse asyncResponse,
+                                   @QueryParam("label") final String label) {
         LOGGER.debug("Finding concept {}", label);
-        return ontologyService.getConceptByLabel(label);
+        readExecutor.execute(asyncResponse, () -> ontologyService.getConceptByLabel(label));
     }
 
     @GET
     @Path("/concept/broader")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SerializedResponseCache.APPLICATION_SMILE,
+        SerializedResponseCache.APPLICATION_CBOR})
     @ApiOperation(value = "Returns all the concepts in the same scheme, which are broader than the given concept",
         response = List.class)
-    public List<ConceptDTO> findBroaderConcepts(@QueryParam("uri") final String uri) {
+    public void findBroaderConcepts(@Suspended final AsyncResponse asyncResponse,
+                                    @QueryParam("uri") final String uri,
+                                    @QueryParam("fields") final String fields,
+                                    @QueryParam("compact") final String compact,
+                                    @Context HttpHeaders headers) {
         LOGGER.debug("Finding broader concepts for: {}", uri);
-        return ontologyService.findBroaderConcepts(uri);
+        ConceptProjection projection = ConceptProjection.of(fields, compact);
+        readExecutor.execute(asyncResponse,
+                () -> responseCache.respond(headers, projection, ontologyService.findBroaderConcepts(uri)));
     }
 
     @GET
     @Path("/concept/narrower")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SerializedResponseCache.APPLICATION_SMILE,
+        SerializedResponseCache.APPLICATION_CBOR})
     @ApiOperation(value = "Returns all the concepts in the same scheme, which are one level narrower than the given concept",
         response = List.class)
-    public List<ConceptDTO> findNarrowerConcepts(@QueryParam("uri") final String uri) {
+    public void findNarrowerConcepts(@Suspended final AsyncResponse asyncResponse,
+                                     @QueryParam("uri") final String uri,
+                                     @QueryParam("fields") final String fields,
+                                     @QueryParam("compact") final String compact,
+                                     @Context HttpHeaders headers) {
         LOGGER.debug("Finding narrower concepts for: {}",  uri);
-        return ontologyService.findNarrowerConcepts(uri);
+        ConceptProjection projection = ConceptProjection.of(fields, compact);
+        readExecutor.execute(asyncResponse,
+                () -> responseCache.respond(headers, projection, ontologyService.findNarrowerConcepts(uri)));
     }
 
     @GET
-    @Path("/concepts/{conceptType}")
+    @Path("/concept/isNarrower")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Tells whether the given concept is narrower than the ancestor concept on any level",
+        response = Boolean.class)
+    public void isNarrowerConcept(@Suspended final AsyncResponse asyncResponse,
+                                  @QueryParam("uri") final String uri,
+                                  @QueryParam("ancestor") final String ancestor) {
+        LOGGER.debug("Checking if {} is narrower than {}", uri, ancestor);
+        readExecutor.execute(asyncResponse, () -> ontologyService.isNarrower(uri, ancestor));
+    }
+
+    @POST
+    @Path("/concept/isNarrower")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Tells for each uri-ancestor pair whether the concept is narrower than the ancestor concept",
+        response = List.class)
+    public void checkNarrowerConcepts(@Suspended final AsyncResponse asyncResponse,
+                                      List<NarrowerCheckDTO> checks) {
+        requireBody(checks);
+        LOGGER.debug("Checking {} narrower relations", checks.size());
+        readExecutor.execute(asyncResponse, () -> ontologyService.checkNarrower(checks));
+    }
+
+    @GET
+    @Path("/concept/path")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns the lowest common ancestors of two concepts and the hierarchical path between them",
+        response = ConceptPathDTO.class)
+    public void findConceptPath(@Suspended final AsyncResponse asyncResponse,
+                                @QueryParam("uri") final String uri,
+                                @QueryParam("other") final String other) {
+        LOGGER.debug("Finding path between {} and {}", uri, other);
+        readExecutor.execute(asyncResponse, () -> ontologyService.findPath(uri, other));
+    }
+
+    @POST
+    @Path("/concepts/descendants")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns the URIs of all the concepts narrower than any of the given concepts, "
+        + "optionally only down to the given depth", response = List.class)
+    public void findDescendantConcepts(@Suspended final AsyncResponse asyncResponse,
+                                       @QueryParam("depth") final Integer depth, List<String> uris) {
+        requireBody(uris);
+        LOGGER.debug("Finding descendants for {} concepts down to depth {}", uris.size(), depth);
+        readExecutor.execute(asyncResponse, () -> ontologyService.findDescendants(uris, depth));
+    }
+
+    @GET
+    @Path("/concepts/suggest")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns the concepts with a preferred or an alternative label starting with the given text, "
+        + "optionally only of the given concept type", response = List.class)
+    public void suggestConcepts(@Suspended final AsyncResponse asyncResponse,
+                                @QueryParam("q") final String text,
+                                @QueryParam("type") final String conceptType,
+                                @DefaultValue("fi") @QueryParam("lang") final String language,
+                                @DefaultValue("10") @QueryParam("limit") final int limit) {
+        if (text == null) {
+            throw new InvalidParameterException("q", null);
+        }
+        LOGGER.debug("Suggesting concepts of type {} for {}", conceptType, text);
+        ConceptType type = toOptionalType(conceptType);
+        readExecutor.execute(asyncResponse, () -> ontologyService.suggest(text, type, language, limit));
+    }
+
+    @GET
+    @Path("/concept/notation")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns the concept for a specific notation, optionally only of the given concept type",
+        response = ConceptDTO.class)
+    public void findConceptByNotation(@Suspended final AsyncResponse asyncResponse,
+                                      @QueryParam("notation") final String notation,
+                                      @QueryParam("type") final String conceptType) {
+        LOGGER.debug("Finding concept of type {} by notation {}", conceptType, notation);
+        ConceptType type = toOptionalType(conceptType);
+        readExecutor.execute(asyncResponse, () -> ontologyService.getConceptByNotation(notation, type));
+    }
+
+    @POST
+    @Path("/concepts/notation")
+    @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns the concepts for the given notations, optionally only of the given concept type. "
+        + "Unknown notations are left out.", response = List.class)
+    public void findConceptsByNotation(@Suspended final AsyncResponse asyncResponse,
+                                       @QueryParam("type") final String conceptType,
+                                       List<String> notations) {
+        requireBody(notations);
+        LOGGER.debug("Finding concepts of type {} by {} notations", conceptType, notations.size());
+        ConceptType type = toOptionalType(conceptType);
+        readExecutor.execute(asyncResponse, () -> ontologyService.findConceptsByNotation(notations, type));
+    }
+
+    @GET
+    @Path("/concepts/{conceptType}")
+    @Produces({MediaType.APPLICATION_JSON, SerializedResponseCache.APPLICATION_SMILE,
+        SerializedResponseCache.APPLICATION_CBOR})
     @ApiOperation(value = "Returns all the concepts with the given concept type",
         response = List.class)
-    public List<ConceptDTO> findByConceptType(@PathParam("conceptType") String conceptType) {
+    public void findByConceptType(@Suspended final AsyncResponse asyncResponse,
+                                  @PathParam("conceptType") String conceptType,
+                                  @QueryParam("fields") final String fields,
+                                  @QueryParam("compact") final String compact,
+                                  @Context HttpHeaders headers) {
         ConceptType type = ConceptType.of(conceptType);
         switch (type) {
             case ALL:
                 // We won't support fetching all the concepts. This makes the difference between requiring 256 MB of memory against 1024 MB of memory.
                 // Fetching all concepts not supported. Use Fuseki directly.
-                return null;
+                asyncResponse.resume(Response.noContent().build());
+                break;
             default:
                 LOGGER.debug("Finding concepts with type {}", type);
-                return ontologyService.findConceptsByType(type);
+                ConceptProjection projection = ConceptProjection.of(fields, compact);
+                readExecutor.execute(asyncResponse, () -> responseCache.respond(conceptsKey(type), headers,
+                        projection, () -> ontologyService.findConceptsByType(type)));
         }
     }
 
     @GET
     @Path("/concepts/{conceptType}/toplevel")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SerializedResponseCache.APPLICATION_SMILE,
+        SerializedResponseCache.APPLICATION_CBOR})
     @ApiOperation(value = "Returns all the top level concept for the given concept type",
         response = List.class)
-    public List<ConceptDTO> findConceptTypeToplevels(@PathParam("conceptType") String conceptType) {
+    public void findConceptTypeToplevels(@Suspended final AsyncResponse asyncResponse,
+                                         @PathParam("conceptType") String conceptType,
+                                         @QueryParam("fields") final String fields,
+                                         @QueryParam("compact") final String compact,
+                                         @Context HttpHeaders headers) {
         ConceptType type = ConceptType.of(conceptType);
         LOGGER.debug("Finding toplevel concepts with type {}", type);
-        return ontologyService.findTopLevelConceptsByType(type);
+        ConceptProjection projection = ConceptProjection.of(fields, compact);
+        readExecutor.execute(asyncResponse, () -> responseCache.respond(topLevelKey(type), headers,
+                projection, () -> ontologyService.findTopLevelConceptsByType(type)));
+    }
+
+    /**
+     * @return the key of the concepts of the type in the response cache
+     */
+    static String conceptsKey(ConceptType type) {
+        return "concepts/" + type;
+    }
+
+    /**
+     * @return the key of the top level concepts of the type in the response cache
+     */
+    static String topLevelKey(ConceptType type) {
+        return "concepts/" + type + "/toplevel";
+    }
+
+    /**
+     * @throws InvalidParameterException if the request body is empty or has null items
+     */
+    private static void requireBody(List<?> body) {
+        if (body == null || body.contains(null)) {
+            throw new InvalidParameterException("body", String.valueOf(body));
+        }
+    }
+
+    /**
+     * @return the concept type, or null if it is not given or is "all".
+     */
+    private static ConceptType toOptionalType(String conceptType) {
+        ConceptType type = conceptType == null ? ConceptType.ALL : ConceptType.of(conceptType);
+        return type == ConceptType.ALL ? null : type;
     }
 }
@@ -0,0 +1,101 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.ontology.exception.ServiceOverloadedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the read requests which query Fuseki on a bounded pool of its own, so that slow queries do not tie up the
+ * servlet container threads. When all the threads are busy and the queue is full, the request is answered
+ * immediately with 503 Service Unavailable.
+ */
+@Component
+public class ReadRequestExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadRequestExecutor.class);
+
+    @Value("${ontology.read.threads:16}")
+    private int threads;
+
+    @Value("${ontology.read.queue-size:64}")
+    private int queueSize;
+
+    private ThreadPoolExecutor executor;
+
+    public ReadRequestExecutor() {
+        // Spring sets the sizes before the pool is started.
+    }
+
+    ReadRequestExecutor(int threads, int queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+        start();
+    }
+
+    @PostConstruct
+    void start() {
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+                r -> new Thread(r, "ontology-read-" + count.incrementAndGet()), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Resumes the response with the result of the request, or with the exception it throws.
+     */
+    public void execute(AsyncResponse asyncResponse, Supplier<?> request) {
+        try {
+            executor.execute(() -> {
+                try {
+                    asyncResponse.resume(request.get());
+                } catch (RuntimeException e) {
+                    asyncResponse.resume(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Rejecting a read request, {} running and {} queued", executor.getActiveCount(),
+                    executor.getQueue().size());
+            asyncResponse.resume(new ServiceOverloadedException());
+        }
+    }
+}
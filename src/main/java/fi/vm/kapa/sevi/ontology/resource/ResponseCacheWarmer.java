@@ -0,0 +1,53 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.ontology.service.CacheWarmer;
+import fi.vm.kapa.sevi.ontology.service.OntologyService;
+import fi.vm.kapa.sevi.service.commons.ConceptType;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+/**
+ * Serialises the concept lists of each concept type into the response cache, as the JSON with all the properties
+ * which the clients ask for by default. The lists are the largest responses, and the slowest to produce.
+ */
+@Component
+public class ResponseCacheWarmer implements CacheWarmer {
+
+    @Inject
+    private OntologyService ontologyService;
+
+    @Inject
+    private SerializedResponseCache responseCache;
+
+    @Override
+    public void warmUp() {
+        for (ConceptType type : ontologyService.getConceptTypes()) {
+            responseCache.warm(OntologyResource.conceptsKey(type), () -> ontologyService.findConceptsByType(type));
+            responseCache.warm(OntologyResource.topLevelKey(type),
+                    () -> ontologyService.findTopLevelConceptsByType(type));
+        }
+    }
+}
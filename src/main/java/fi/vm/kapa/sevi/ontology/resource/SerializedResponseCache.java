@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fi.vm.kapa.sevi.configuration.CustomObjectMapper;
+import fi.vm.kapa.sevi.ontology.dto.AbstractDTO;
+import fi.vm.kapa.sevi.ontology.service.OntologyService;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the serialised JSON, Smile or CBOR bytes of the large, frequently requested responses, together with a gzip
+ * compressed copy. A cached response is written out as such, without traversing the DTOs or compressing it again.
+ * All the cached responses are dropped when the dataset version changes.
+ */
+@Component
+public class SerializedResponseCache {
+
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE_TYPE = new MediaType("application", "x-jackson-smile");
+    public static final String APPLICATION_CBOR = "application/cbor";
+    public static final MediaType APPLICATION_CBOR_TYPE = new MediaType("application", "cbor");
+
+    private static final String GZIP = "gzip";
+
+    @Inject
+    private OntologyService ontologyService;
+
+    private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+
+    private final Map<String, SerializedResponse> responses = new ConcurrentHashMap<>();
+
+    private volatile String version;
+
+    public SerializedResponseCache() {
+        // JSON first, it is the default when the client accepts any of these.
+        mappers.put(MediaType.APPLICATION_JSON_TYPE, new CustomObjectMapper());
+        mappers.put(APPLICATION_SMILE_TYPE, new CustomObjectMapper(new SmileFactory()));
+        mappers.put(APPLICATION_CBOR_TYPE, new CustomObjectMapper(new CBORFactory()));
+    }
+
+    /**
+     * Returns the cached response for the key, or serialises and caches the concepts if there is none for the current
+     * dataset version. The response is in the first JSON, Smile or CBOR format the client accepts, and it is gzip
+     * encoded if the client accepts that.
+     */
+    public Response respond(String key, HttpHeaders headers, ConceptProjection projection,
+                            Supplier<? extends List<? extends AbstractDTO>> concepts) {
+        MediaType mediaType = selectMediaType(headers.getAcceptableMediaTypes());
+        SerializedResponse response = cached(key, mediaType, projection, concepts);
+        Response.ResponseBuilder builder = Response.ok().type(mediaType)
+                .header(HttpHeaders.VARY, ConditionalGetFilter.VARY);
+        if (acceptsGzip(headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return builder.entity(response.gzip).header(HttpHeaders.CONTENT_ENCODING, GZIP).build();
+        }
+        return builder.entity(response.bytes).build();
+    }
+
+    /**
+     * Caches the JSON response with all the properties for the key, if it is not cached for the current dataset
+     * version yet.
+     */
+    public void warm(String key, Supplier<? extends List<? extends AbstractDTO>> concepts) {
+        cached(key, MediaType.APPLICATION_JSON_TYPE, ConceptProjection.FULL, concepts);
+    }
+
+    private SerializedResponse cached(String key, MediaType mediaType, ConceptProjection projection,
+                                      Supplier<? extends List<? extends AbstractDTO>> concepts) {
+        String variantKey = key + '|' + mediaType + '|' + projection.getKey();
+        String currentVersion = ontologyService.getDatasetVersion();
+        if (!currentVersion.equals(version)) {
+            responses.clear();
+            version = currentVersion;
+        }
+        SerializedResponse response = responses.get(variantKey);
+        if (response == null || !response.version.equals(currentVersion)) {
+            // The entity is produced outside the map, a slow query must not block the other keys.
+            response = new SerializedResponse(currentVersion, serialize(mediaType, projection, concepts.get()));
+            responses.put(variantKey, response);
+        }
+        return response;
+    }
+
+    /**
+     * Serialises the concepts without caching them, for the projection to apply to the smaller lists too.
+     */
+    public Response respond(HttpHeaders headers, ConceptProjection projection, List<? extends AbstractDTO> concepts) {
+        MediaType mediaType = selectMediaType(headers.getAcceptableMediaTypes());
+        return Response.ok(serialize(mediaType, projection, concepts), mediaType)
+                .header(HttpHeaders.VARY, ConditionalGetFilter.VARY).build();
+    }
+
+    private MediaType selectMediaType(List<MediaType> acceptableMediaTypes) {
+        for (MediaType acceptable : acceptableMediaTypes) {
+            for (MediaType mediaType : mappers.keySet()) {
+                if (acceptable.isCompatible(mediaType)) {
+                    return mediaType;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    private byte[] serialize(MediaType mediaType, ConceptProjection projection,
+                             List<? extends AbstractDTO> concepts) {
+        try {
+            return projection.writer(mappers.get(mediaType)).writeValueAsBytes(projection.apply(concepts));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise the response", e);
+        }
+    }
+
+    static boolean acceptsGzip(Iterable<String> acceptEncodings) {
+        if (acceptEncodings == null) {
+            return false;
+        }
+        for (String header : acceptEncodings) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.split(";");
+                if (GZIP.equalsIgnoreCase(parts[0].trim()) && !(parts.length > 1 && isZeroQuality(parts[1]))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZeroQuality(String parameter) {
+        String[] nameAndValue = parameter.split("=");
+        if (nameAndValue.length != 2 || !"q".equalsIgnoreCase(nameAndValue[0].trim())) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(nameAndValue[1].trim()) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static class SerializedResponse {
+        private final String version;
+        private final byte[] bytes;
+        private final byte[] gzip;
+
+        SerializedResponse(String version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+            this.gzip = gzip(bytes);
+        }
+    }
+}
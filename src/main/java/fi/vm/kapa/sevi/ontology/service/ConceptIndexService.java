@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.service;
+
+import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.index.BroaderRelation;
+import fi.vm.kapa.sevi.ontology.index.ConceptIndex;
+import fi.vm.kapa.sevi.ontology.index.ConceptLabel;
+import fi.vm.kapa.sevi.ontology.jena.JenaConceptParser;
+import fi.vm.kapa.sevi.service.commons.ConceptType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the in-memory concept indexes of each concept type. An index is built from Fuseki on first use and
+ * dropped whenever the ontologies are reloaded. An index is built by the first request which needs it, outside the
+ * map, and the other requests for the same type wait for it; the requests for the other types are not held up.
+ */
+@Service
+public class ConceptIndexService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConceptIndexService.class);
+
+    private final Map<ConceptType, CompletableFuture<ConceptIndex>> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * @throws RuntimeException what building the index threw, if it was built for this request or for the requests
+     * waiting for it
+     */
+    public ConceptIndex getIndex(JenaConceptParser parser) {
+        ConceptType type = parser.getConceptType();
+        CompletableFuture<ConceptIndex> index = indexes.get(type);
+        if (index == null) {
+            CompletableFuture<ConceptIndex> building = new CompletableFuture<>();
+            index = indexes.putIfAbsent(type, building);
+            if (index == null) {
+                index = building;
+                try {
+                    building.complete(buildIndex(parser));
+                } catch (RuntimeException e) {
+                    // The next request tries again.
+                    indexes.remove(type, building);
+                    building.completeExceptionally(e);
+                }
+            }
+        }
+        return await(index);
+    }
+
+    public void rebuild(JenaConceptParser parser) {
+        indexes.put(parser.getConceptType(), CompletableFuture.completedFuture(buildIndex(parser)));
+    }
+
+    public void clear() {
+        LOGGER.info("Clearing concept indexes.");
+        indexes.clear();
+    }
+
+    private ConceptIndex buildIndex(JenaConceptParser parser) {
+        long now = System.currentTimeMillis();
+        List<ConceptDTO> concepts = collect(parser.getConcepts());
+        List<BroaderRelation> relations = collect(parser.getBroaderRelations());
+        List<ConceptLabel> labels = collect(parser.getLabels());
+        ConceptIndex index = new ConceptIndex(parser.getConceptType(), concepts, relations, labels);
+        LOGGER.info("{} concept index built from {} concepts, {} broader relations and {} labels in {}ms",
+                parser.getConceptType(), concepts.size(), relations.size(), labels.size(),
+                System.currentTimeMillis() - now);
+        return index;
+    }
+
+    private static ConceptIndex await(CompletableFuture<ConceptIndex> index) {
+        try {
+            return index.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the concept index", e);
+        }
+    }
+
+    private static <T> List<T> collect(Stream<T> stream) {
+        try (Stream<T> s = stream) {
+            return s.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Refreshes the ontologies in the background on the schedule of ontology.refresh.cron, which is off by default.
+ * The sources are fetched conditionally, and the ontologies are indexed and the {@link CacheWarmer}s run only if any
+ * of them has changed. Each run is delayed by a random jitter of up to ontology.refresh.jitter-seconds, so that the instances
+ * of a cluster do not all refresh at once. If ontology.refresh.window is set, as for example 01:00-05:00, a run which
+ * would start outside the window is skipped. The window may span midnight.
+ */
+@Component
+public class OntologyRefreshScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OntologyRefreshScheduler.class);
+
+    @Autowired
+    private OntologyService ontologyService;
+
+    @Autowired(required = false)
+    private List<CacheWarmer> warmers = Collections.emptyList();
+
+    @Value("${ontology.refresh.cron:}")
+    private String cron;
+    @Value("${ontology.refresh.jitter-seconds:300}")
+    private long jitterSeconds;
+    @Value("${ontology.refresh.window:}")
+    private String window;
+    @Value("${ontology.refresh.zone:}")
+    private String zone;
+
+    private ZoneId zoneId;
+    private LocalTime windowStart;
+    private LocalTime windowEnd;
+
+    private ThreadPoolTaskScheduler scheduler;
+
+    /**
+     * @throws IllegalArgumentException if the cron expression, the window or the zone is not valid
+     */
+    @PostConstruct
+    public void start() {
+        if (cron.isEmpty()) {
+            LOGGER.info("The scheduled ontology refresh is off");
+            return;
+        }
+        zoneId = zone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zone);
+        setWindow(window);
+        CronTrigger trigger = new CronTrigger(cron, TimeZone.getTimeZone(zoneId));
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("ontology-refresh-");
+        scheduler.initialize();
+        scheduler.schedule(this::scheduleRefresh, trigger);
+        LOGGER.info("Refreshing the ontologies on {} in {}, jitter {}s, window {}", cron, zoneId, jitterSeconds,
+                window.isEmpty() ? "none" : window);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * @param window the window as HH:mm-HH:mm, or empty for none
+     */
+    void setWindow(String window) {
+        if (window.isEmpty()) {
+            windowStart = null;
+            windowEnd = null;
+            return;
+        }
+        String[] times = window.split("-");
+        if (times.length != 2) {
+            throw new IllegalArgumentException("The maintenance window must be HH:mm-HH:mm: " + window);
+        }
+        windowStart = LocalTime.parse(times[0].trim());
+        windowEnd = LocalTime.parse(times[1].trim());
+    }
+
+    boolean isInWindow(LocalTime time) {
+        if (windowStart == null) {
+            return true;
+        }
+        if (windowStart.isBefore(windowEnd)) {
+            return !time.isBefore(windowStart) && time.isBefore(windowEnd);
+        }
+        return !time.isBefore(windowStart) || time.isBefore(windowEnd);
+    }
+
+    private void scheduleRefresh() {
+        long jitterMillis = jitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(jitterSeconds * 1000) : 0;
+        scheduler.schedule(() -> refresh(LocalTime.now(zoneId)), new Date(System.currentTimeMillis() + jitterMillis));
+    }
+
+    /**
+     * Runs one refresh, if the time is within the window.
+     */
+    void refresh(LocalTime now) {
+        if (!isInWindow(now)) {
+            LOGGER.info("Skipping the scheduled ontology refresh at {}, outside the window {}", now, window);
+            return;
+        }
+        try {
+            LOGGER.info("Running the scheduled ontology refresh");
+            if (ontologyService.refreshConcepts()) {
+                warmUp();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("The scheduled ontology refresh failed", e);
+        }
+    }
+
+    private void warmUp() {
+        long now = System.currentTimeMillis();
+        warmers.forEach(CacheWarmer::warmUp);
+        LOGGER.info("The caches were warmed up in {}ms", System.currentTimeMillis() - now);
+    }
+}
@@ -23,13 +23,22 @@
 package fi.vm.kapa.sevi.ontology.service;
 
 import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.dto.ConceptPathDTO;
+import fi.vm.kapa.sevi.ontology.dto.NarrowerCheckDTO;
 import fi.vm.kapa.sevi.ontology.dto.ViewDTO;
 import fi.vm.kapa.sevi.ontology.exception.ConceptNotFoundException;
+import fi.vm.kapa.sevi.ontology.exception.InvalidParameterException;
 import fi.vm.kapa.sevi.ontology.exception.OntologyServerException;
 import fi.vm.kapa.sevi.ontology.exception.ParserNotFoundException;
+import fi.vm.kapa.sevi.ontology.index.ConceptHierarchy;
+import fi.vm.kapa.sevi.ontology.index.ConceptIndex;
+import fi.vm.kapa.sevi.ontology.index.ConceptLabel;
+import fi.vm.kapa.sevi.ontology.index.LabelIndex;
 import fi.vm.kapa.sevi.ontology.jena.AllConceptParser;
+import fi.vm.kapa.sevi.ontology.jena.IngestReport;
 import fi.vm.kapa.sevi.ontology.jena.JenaConceptParser;
 import fi.vm.kapa.sevi.ontology.jena.JenaOntologyFetcher;
+import fi.vm.kapa.sevi.ontology.jena.SchemeGraphs;
 import fi.vm.kapa.sevi.ontology.jena.ontology.*;
 import fi.vm.kapa.sevi.ontology.jena.vocabulary.LifesituationParser;
 import fi.vm.kapa.sevi.ontology.jena.vocabulary.PtvlClassificationParser;
@@ -43,13 +52,23 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -60,6 +79,25 @@ public class OntologyService {
     // TODO: move cache and update state from service to Redis. PAL-1917
     protected static final AtomicBoolean updateOngoing = new AtomicBoolean(false);
 
+    // The most suggestions returned, whatever the limit asked for.
+    static final int MAX_SUGGESTIONS = 100;
+
+    // Preferred labels before alternative labels with the same key, as in the label index.
+    private static final Comparator<Map.Entry<ConceptLabel, ConceptIndex>> SUGGESTION_ORDER =
+            Comparator.<Map.Entry<ConceptLabel, ConceptIndex>, String>comparing(
+                    match -> LabelIndex.normalize(match.getKey().getLabel()))
+                    .thenComparing(match -> !match.getKey().isPreferred());
+
+    // The fingerprint of the load the indexes and the responses were built from.
+    private final AtomicReference<String> loadedFingerprint = new AtomicReference<>();
+
+    // Counts the evictions asked for through the maintenance API, which do not change the fingerprint.
+    private final AtomicLong evictions = new AtomicLong();
+
+    // The fingerprints of the loads this instance has rebuilt the concept indexes and the search index for.
+    private volatile String rebuiltFingerprint;
+    private volatile String reindexedFingerprint;
+
     private ExecutorService executor = Executors.newFixedThreadPool(1);
 
     @Autowired
@@ -98,6 +136,18 @@ public class OntologyService {
     @Autowired 
     private JenaOntologyFetcher jenaOntologyFetcher;
 
+    @Autowired
+    private ConceptIndexService conceptIndexService;
+
+    @Autowired
+    private SchemeGraphs schemeGraphs;
+
+    @Autowired
+    private SnapshotFallback snapshots;
+
+    @Autowired
+    private IngestReport ingestReport;
+
     // This is package private to mock this in tests.
     List<JenaConceptParser> getParsers() {
         List<JenaConceptParser> parsers = new ArrayList<>();
@@ -106,6 +156,13 @@ public class OntologyService {
         return parsers;
     }
 
+    /**
+     * @return the concept types which have a parser of their own
+     */
+    public List<ConceptType> getConceptTypes() {
+        return getParsers().stream().map(JenaConceptParser::getConceptType).collect(Collectors.toList());
+    }
+
     private List<JenaConceptParser> getClassificationParsers() {
         return Arrays.asList(
                 lifesituationParser,
@@ -142,21 +199,25 @@ public class OntologyService {
 
     @Cacheable("findConceptsByType")
     public List<ConceptDTO> findConceptsByType(ConceptType type) {
-        try (Stream<ConceptDTO> stream = getParserForType(type).getConcepts()) {
-            return stream.collect(Collectors.toList());
-        }
+        return snapshots.query("findConceptsByType/" + type, () -> {
+            try (Stream<ConceptDTO> stream = getParserForType(type).getConcepts()) {
+                return stream.collect(Collectors.toList());
+            }
+        });
     }
 
     @Cacheable("findTopLevelConceptsByType")
     public List<ConceptDTO> findTopLevelConceptsByType(ConceptType type) {
-        try (Stream<ConceptDTO> stream = getParserForType(type).getTopLevelConcepts()) {
-            return stream.collect(Collectors.toList());
-        }
+        return snapshots.query("findTopLevelConceptsByType/" + type, () -> {
+            try (Stream<ConceptDTO> stream = getParserForType(type).getTopLevelConcepts()) {
+                return stream.collect(Collectors.toList());
+            }
+        });
     }
 
     @Cacheable("getConcept")
     public ConceptDTO getConcept(String uri) {
-        ConceptDTO concept = allConceptParser.getConceptByUri(uri);
+        ConceptDTO concept = snapshots.query("getConcept/" + uri, () -> allConceptParser.getConceptByUri(uri));
         if (concept == null) {
             throw new ConceptNotFoundException(uri);
         }
@@ -176,27 +237,148 @@ public class OntologyService {
         return concept;
     }
 
+    /**
+     * @param type the concept type of the notation, or null to look it up from all the concept types
+     */
+    public ConceptDTO getConceptByNotation(String notation, ConceptType type) {
+        ConceptDTO concept = findConceptByNotation(getIndexes(type), notation);
+        if (concept == null) {
+            throw new ConceptNotFoundException(notation);
+        }
+        return concept;
+    }
+
+    /**
+     * @return the concepts of the given notations in the same order, leaving out the notations not found.
+     */
+    public List<ConceptDTO> findConceptsByNotation(List<String> notations, ConceptType type) {
+        List<ConceptIndex> indexes = getIndexes(type);
+        return notations.stream()
+                .map(notation -> findConceptByNotation(indexes, notation))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private ConceptDTO findConceptByNotation(List<ConceptIndex> indexes, String notation) {
+        return indexes.stream()
+                .map(index -> index.getConceptByNotation(notation))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Finds the concepts which have a preferred or an alternative label starting with the given text. The concepts
+     * are in the order of the labels matched, and a concept found from several concept types is returned once.
+     *
+     * @param type the concept type to search from, or null to search from all of them
+     * @param limit the most suggestions to return, up to {@value #MAX_SUGGESTIONS}
+     * @throws InvalidParameterException if the limit is not positive
+     */
+    public List<ConceptDTO> suggest(String text, ConceptType type, String language, int limit) {
+        if (limit <= 0) {
+            throw new InvalidParameterException("limit", String.valueOf(limit));
+        }
+        int max = Math.min(limit, MAX_SUGGESTIONS);
+        List<Map.Entry<ConceptLabel, ConceptIndex>> matches = new ArrayList<>();
+        for (ConceptIndex index : getIndexes(type)) {
+            index.getLabels().suggest(text, language, max)
+                    .forEach(label -> matches.add(new AbstractMap.SimpleImmutableEntry<>(label, index)));
+        }
+        // Each index has its matches in label order already, they are merged by the label matched.
+        matches.sort(SUGGESTION_ORDER);
+        List<ConceptDTO> suggestions = new ArrayList<>();
+        Set<String> uris = new HashSet<>();
+        for (Map.Entry<ConceptLabel, ConceptIndex> match : matches) {
+            if (uris.add(match.getKey().getUri())) {
+                suggestions.add(toConcept(match.getValue(), match.getKey()));
+                if (suggestions.size() == max) {
+                    break;
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    private ConceptDTO toConcept(ConceptIndex index, ConceptLabel label) {
+        if (label == null) {
+            return null;
+        }
+        ConceptDTO concept = index.getConcept(label.getUri());
+        if (concept == null) {
+            return new ConceptDTO(label.getUri(), label.getLabel(), null, index.getConceptType().getInScheme());
+        }
+        return concept;
+    }
+
     @Cacheable("findBroaderConcepts")
     public List<ConceptDTO> findBroaderConcepts(String uri) {
-        try (Stream<ConceptDTO> stream = allConceptParser.getBroaderConceptsByUri(uri)) {
-            List<ConceptDTO> res = stream.collect(Collectors.toList());
-            return res;
-        }
+        return snapshots.query("findBroaderConcepts/" + uri, () -> {
+            try (Stream<ConceptDTO> stream = allConceptParser.getBroaderConceptsByUri(uri)) {
+                return stream.collect(Collectors.toList());
+            }
+        });
     }
 
     @Cacheable("findNarrowerConcepts")
     public List<ConceptDTO> findNarrowerConcepts(String uri) {
-        try (Stream<ConceptDTO> stream = allConceptParser.getNarrowerConceptsByUri(uri)) {
-            return stream.collect(Collectors.toList());
+        return snapshots.query("findNarrowerConcepts/" + uri, () -> {
+            try (Stream<ConceptDTO> stream = allConceptParser.getNarrowerConceptsByUri(uri)) {
+                return stream.collect(Collectors.toList());
+            }
+        });
+    }
+
+    public boolean isNarrower(String uri, String ancestor) {
+        return isNarrower(getHierarchies(), uri, ancestor);
+    }
+
+    public List<NarrowerCheckDTO> checkNarrower(List<NarrowerCheckDTO> checks) {
+        List<ConceptHierarchy> hierarchies = getHierarchies();
+        checks.forEach(check -> check.setNarrower(isNarrower(hierarchies, check.getUri(), check.getAncestor())));
+        return checks;
+    }
+
+    public ConceptPathDTO findPath(String uri, String other) {
+        for (ConceptHierarchy hierarchy : getHierarchies()) {
+            List<String> ancestors = hierarchy.getLowestCommonAncestors(uri, other);
+            if (!ancestors.isEmpty()) {
+                return new ConceptPathDTO(uri, other, ancestors, hierarchy.getPath(uri, other));
+            }
+        }
+        return new ConceptPathDTO(uri, other, new ArrayList<>(), new ArrayList<>());
+    }
+
+    public List<String> findDescendants(Collection<String> uris, Integer maxDepth) {
+        List<ConceptHierarchy> hierarchies = getHierarchies();
+        Set<String> descendants = new LinkedHashSet<>();
+        for (String uri : uris) {
+            hierarchies.forEach(h -> h.collectDescendants(uri, maxDepth, descendants));
         }
+        return new ArrayList<>(descendants);
+    }
+
+    private boolean isNarrower(List<ConceptHierarchy> hierarchies, String uri, String ancestor) {
+        return hierarchies.stream().anyMatch(h -> h.isNarrower(uri, ancestor));
+    }
+
+    private List<ConceptIndex> getIndexes(ConceptType type) {
+        List<JenaConceptParser> parsers = type == null ? getParsers() : Arrays.asList(getParserForType(type));
+        return parsers.stream().map(conceptIndexService::getIndex).collect(Collectors.toList());
+    }
+
+    private List<ConceptHierarchy> getHierarchies() {
+        return getParsers().stream()
+                .map(p -> conceptIndexService.getIndex(p).getHierarchy())
+                .collect(Collectors.toList());
     }
 
     public Boolean fetchConcepts() {
-        return runWithOngoingFlag(this::doFetchConcepts);
+        return runWithOngoingFlag(() -> reported(() -> doFetchConcepts(rebuiltFingerprint) != null));
     }
 
     public Boolean fetchAndIndexConcepts() {
-        return runWithOngoingFlag(this::doFetchAndIndexOntologies);
+        return runWithOngoingFlag(() -> reported(this::doFetchAndIndexOntologies));
     }
 
     public Boolean indexPtvlToplevels() {
@@ -235,19 +417,33 @@ public class OntologyService {
         return runWithOngoingFlag(() -> doIndexConcepts(type));
     }
 
-    private void doFetchConcepts() {
-        LOGGER.info("Delete old ontologies");
-        deleteAllFusekiDatasets();
+    /**
+     * @param completed the fingerprint of the load the steps after the load have been completed for
+     * @return the fingerprint of the ontologies if they had changed and were stored, otherwise null
+     */
+    private String doFetchConcepts(String completed) {
         LOGGER.info("Download ontologies");
-        createAllFusekiDatasets();
+        String fingerprint = createAllFusekiDatasets(completed);
+        if (fingerprint == null) {
+            LOGGER.info("Ontologies have not changed, keeping the caches and the indexes");
+            return null;
+        }
         LOGGER.info("Ontologies stored");
         LOGGER.info("Querying ontologies");
         evictCaches();
+        LOGGER.info("Building concept indexes");
+        long now = System.currentTimeMillis();
+        getParsers().forEach(conceptIndexService::rebuild);
+        ingestReport.phase("rebuild-indexes", now);
+        rebuiltFingerprint = fingerprint;
+        return fingerprint;
     }
 
     private void doIndexConcepts(ConceptType type) {
         long now = System.currentTimeMillis();
-        indexingService.reIndexConcepts(getParserForType(type).getConcepts());
+        try (Stream<ConceptDTO> concepts = getParserForType(type).getConcepts()) {
+            indexingService.reIndexConcepts(concepts);
+        }
         LOGGER.info("{} concepts indexed in {}ms", type, System.currentTimeMillis() - now);
     }
 
@@ -270,14 +466,62 @@ public class OntologyService {
         if (indexAll) {
             long now = System.currentTimeMillis();
             LOGGER.info("Indexing concepts");
-            getConceptParsers().stream().forEach(p -> indexingService.reIndexConcepts(p.getConcepts()));
-            LOGGER.info("Concepts indexed in {}ms", System.currentTimeMillis() - now);
+            AtomicLong indexed = new AtomicLong();
+            for (JenaConceptParser parser : getConceptParsers()) {
+                try (Stream<ConceptDTO> concepts = parser.getConcepts()) {
+                    indexingService.reIndexConcepts(concepts.peek(c -> indexed.incrementAndGet()));
+                }
+            }
+            ingestReport.addIndexedConcepts(indexed.get());
+            ingestReport.phase("search-index", now);
+            LOGGER.info("{} concepts indexed in {}ms", indexed.get(), System.currentTimeMillis() - now);
         }
     }
     
-    private void doFetchAndIndexOntologies() {
-        doFetchConcepts();
+    /**
+     * @return true if the ontologies had changed and were stored and indexed
+     */
+    private boolean doFetchAndIndexOntologies() {
+        String fingerprint = doFetchConcepts(reindexedFingerprint);
+        if (fingerprint == null) {
+            return false;
+        }
         doIndexConcepts(true, true, true);
+        reindexedFingerprint = fingerprint;
+        return true;
+    }
+
+    /**
+     * Fetches the ontologies and indexes them if they have changed, like {@link #fetchAndIndexConcepts()} but in the
+     * calling thread.
+     *
+     * @return true if the ontologies had changed, false if they had not or an update was already ongoing
+     */
+    public boolean refreshConcepts() {
+        if (!updateOngoing.compareAndSet(false, true)) {
+            LOGGER.info("Ontology updating already ongoing");
+            return false;
+        }
+        try {
+            return reported(this::doFetchAndIndexOntologies);
+        } finally {
+            updateOngoing.set(false);
+        }
+    }
+
+    /**
+     * Records the load in the ingest report, which then has it as the last one whether it succeeded or not.
+     */
+    private boolean reported(BooleanSupplier load) {
+        ingestReport.begin();
+        try {
+            boolean changed = load.getAsBoolean();
+            ingestReport.end(null);
+            return changed;
+        } catch (RuntimeException e) {
+            ingestReport.end(e);
+            throw e;
+        }
     }
 
     /**
@@ -286,8 +530,28 @@ public class OntologyService {
     @CacheEvict(value = {"findConcepts","findViews","findConceptsByType","findTopLevelConceptsByType",
             "getConcept","getConceptsByLabel","findBroaderConcepts","findNarrowerConcepts"}, allEntries=true)
     public void evictCaches() {
-        // This method is intentionally empty. It evicts the caches through annotated aspects.
+        // The Spring caches are evicted through annotated aspects.
         LOGGER.info("Evicting caches.");
+        loadedFingerprint.set(schemeGraphs.getFingerprint());
+        conceptIndexService.clear();
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * The version is based on the fingerprint stored with the ontology, so it changes on every instance when any of
+     * them loads the ontology again, and the concept indexes are then cleared.
+     *
+     * @return a version which changes whenever the data served may have changed.
+     */
+    public String getDatasetVersion() {
+        String fingerprint = schemeGraphs.getFingerprint();
+        String loaded = loadedFingerprint.get();
+        if (!Objects.equals(fingerprint, loaded) && loadedFingerprint.compareAndSet(loaded, fingerprint)) {
+            LOGGER.info("The ontology has been loaded with the fingerprint {}, clearing the concept indexes",
+                    fingerprint);
+            conceptIndexService.clear();
+        }
+        return (fingerprint != null ? fingerprint : "none") + '.' + evictions.get();
     }
     
     public boolean isUpdateOngoing() {
@@ -298,19 +562,27 @@ public class OntologyService {
         return runWithOngoingFlag(this::deleteAllFusekiDatasets);
     }
 
+    /**
+     * Runs the update in the executor. The flag is held until the update has finished, so that no other update
+     * is started in the meantime.
+     */
     private boolean runWithOngoingFlag(Runnable target) {
         if (updateOngoing.compareAndSet(false, true)) {
             try {
-                executor.execute(target);
+                executor.execute(() -> {
+                    try {
+                        target.run();
+                    } finally {
+                        LOGGER.info("Now clearing updateOngoing flag");
+                        updateOngoing.set(false);
+                    }
+                });
                 return true;
             } catch(RuntimeException e) {
                 LOGGER.info("Operation failed with exception" , e);
+                updateOngoing.set(false);
                 return false;
             }
-            finally {
-                LOGGER.info("Now clearing updateOngoing flag");
-                updateOngoing.getAndSet(false);
-            }
         } else {
             LOGGER.info("Ontology updating already ongoing");
             return false;
@@ -330,8 +602,8 @@ public class OntologyService {
         evictCaches();
     }
 
-    private void createAllFusekiDatasets() throws OntologyServerException {
-        jenaOntologyFetcher.createFusekiTDBDataset();
+    private String createAllFusekiDatasets(String completed) throws OntologyServerException {
+        return jenaOntologyFetcher.createFusekiTDBDataset(completed);
     }
     
     private Stream<ConceptDTO> queryAllConcepts(List<JenaConceptParser> parsers) {
@@ -0,0 +1,101 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.service;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the last good result of each read query, so that the query can still be answered while Fuseki is
+ * unavailable. Unlike the Spring caches, the snapshots are kept over the ontology reloads. The snapshots are bounded
+ * by the number of concepts in them, a list counting as many concepts as it has, and the least recently used
+ * snapshots are dropped when there are too many concepts. A result larger than the bound is not remembered.
+ */
+@Component
+public class SnapshotFallback {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotFallback.class);
+
+    private final Map<String, Object> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxConcepts;
+    private long concepts;
+
+    @Autowired
+    public SnapshotFallback(@Value("${ontology.snapshot.max-concepts:100000}") long maxConcepts) {
+        this.maxConcepts = maxConcepts;
+    }
+
+    /**
+     * Runs the query and remembers its result, or returns the last good result if Fuseki is unavailable.
+     *
+     * @throws FusekiUnavailableException if Fuseki is unavailable and there is no earlier result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T query(String key, Supplier<T> query) {
+        try {
+            T result = query.get();
+            if (result != null) {
+                remember(key, result);
+            }
+            return result;
+        } catch (FusekiUnavailableException e) {
+            T snapshot = (T) get(key);
+            if (snapshot == null) {
+                throw e;
+            }
+            LOGGER.warn("Answering {} from a snapshot: {}", key, e.getMessage());
+            return snapshot;
+        }
+    }
+
+    private synchronized Object get(String key) {
+        return snapshots.get(key);
+    }
+
+    private synchronized void remember(String key, Object result) {
+        Object previous = snapshots.put(key, result);
+        concepts += sizeOf(result) - sizeOf(previous);
+        Iterator<Object> eldest = snapshots.values().iterator();
+        while (concepts > maxConcepts && eldest.hasNext()) {
+            concepts -= sizeOf(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long sizeOf(Object snapshot) {
+        if (snapshot == null) {
+            return 0;
+        }
+        // An empty list takes room as well.
+        return snapshot instanceof Collection ? Math.max(1, ((Collection<?>) snapshot).size()) : 1;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.configuration;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.dto.ViewDTO;
+import fi.vm.kapa.sevi.service.commons.ConceptType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the payload size and the encoding and decoding times of JSON, Smile and CBOR for the concept list and
+ * view tree responses. This is not run with the tests, run the main method when changing the formats or the DTOs:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=fi.vm.kapa.sevi.configuration.SerializationBenchmark
+ * </pre>
+ */
+public class SerializationBenchmark {
+
+    // Roughly the size of YSO.
+    private static final int CONCEPT_COUNT = 30000;
+    private static final int VIEW_DEPTH = 4;
+    private static final int VIEW_FANOUT = 8;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+        mappers.put("JSON", new CustomObjectMapper());
+        mappers.put("Smile", new CustomObjectMapper(new SmileFactory()));
+        mappers.put("CBOR", new CustomObjectMapper(new CBORFactory()));
+
+        List<ConceptDTO> concepts = buildConcepts();
+        ViewDTO view = buildView("", 0);
+
+        System.out.println(String.format("%-6s %-8s %12s %12s %12s %12s", "format", "shape", "bytes", "gzip bytes",
+                "encode ms", "decode ms"));
+        for (Map.Entry<String, ObjectMapper> mapper : mappers.entrySet()) {
+            run(mapper.getKey(), "concepts", mapper.getValue(), concepts, new TypeReference<List<ConceptDTO>>() { });
+            run(mapper.getKey(), "view", mapper.getValue(), view, new TypeReference<ViewDTO>() { });
+        }
+    }
+
+    private static void run(String format, String shape, ObjectMapper mapper, Object value, TypeReference<?> type)
+            throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(value);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            mapper.readValue(mapper.writeValueAsBytes(value), type);
+        }
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            bytes = mapper.writeValueAsBytes(value);
+            long encoded = System.nanoTime();
+            mapper.readValue(bytes, type);
+            decodeNanos += System.nanoTime() - encoded;
+            encodeNanos += encoded - start;
+        }
+        System.out.println(String.format("%-6s %-8s %12d %12d %12.2f %12.2f", format, shape, bytes.length,
+                gzip(bytes).length, encodeNanos / 1e6 / ROUNDS, decodeNanos / 1e6 / ROUNDS));
+    }
+
+    private static List<ConceptDTO> buildConcepts() {
+        List<ConceptDTO> concepts = new ArrayList<>();
+        for (int i = 0; i < CONCEPT_COUNT; i++) {
+            ConceptDTO concept = new ConceptDTO("http://www.yso.fi/onto/yso/p" + i, "käsite " + i, "",
+                    ConceptType.YSO.getInScheme());
+            concept.setSwedish("begrepp " + i);
+            concept.setEnglish("concept " + i);
+            concepts.add(concept);
+        }
+        return concepts;
+    }
+
+    private static ViewDTO buildView(String path, int depth) {
+        ViewDTO view = new ViewDTO("http://urn.fi/URN:NBN:fi:au:ptvl:KE" + path, "elämäntilanne " + path,
+                "KE" + path, ConceptType.LIFESITUATION);
+        if (depth < VIEW_DEPTH) {
+            for (int i = 0; i < VIEW_FANOUT; i++) {
+                view.getChildren().add(buildView(path + "." + i, depth + 1));
+            }
+        }
+        return view;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConceptHierarchyTest {
+
+    private ConceptHierarchy hierarchy;
+
+    @Before
+    public void setup() {
+        // a    f
+        // | \  |
+        // b  c |
+        // | / \|
+        // d    g
+        // |
+        // e
+        hierarchy = ConceptHierarchy.build(Arrays.asList(
+                new BroaderRelation("b", "a"),
+                new BroaderRelation("c", "a"),
+                new BroaderRelation("d", "b"),
+                new BroaderRelation("d", "c"),
+                new BroaderRelation("e", "d"),
+                new BroaderRelation("g", "c"),
+                new BroaderRelation("g", "f"),
+                new BroaderRelation("g", "f")
+        ));
+    }
+
+    @Test
+    public void containsAllConceptsOfTheRelations() {
+        assertEquals(7, hierarchy.size());
+        assertTrue(hierarchy.contains("a"));
+        assertTrue(hierarchy.contains("g"));
+        assertFalse(hierarchy.contains("x"));
+    }
+
+    @Test
+    public void findsDirectAndIndirectBroaderConcepts() {
+        assertTrue(hierarchy.isNarrower("b", "a"));
+        assertTrue(hierarchy.isNarrower("e", "a"));
+        assertTrue(hierarchy.isNarrower("e", "b"));
+        assertTrue(hierarchy.isNarrower("e", "c"));
+        assertTrue(hierarchy.isNarrower("g", "a"));
+        assertTrue(hierarchy.isNarrower("g", "f"));
+    }
+
+    @Test
+    public void isNotNarrowerThanUnrelatedOrNarrowerConcepts() {
+        assertFalse(hierarchy.isNarrower("a", "e"));
+        assertFalse(hierarchy.isNarrower("g", "b"));
+        assertFalse(hierarchy.isNarrower("d", "f"));
+        assertFalse(hierarchy.isNarrower("b", "c"));
+    }
+
+    @Test
+    public void isNotNarrowerThanItselfOrUnknownConcepts() {
+        assertFalse(hierarchy.isNarrower("d", "d"));
+        assertFalse(hierarchy.isNarrower("x", "a"));
+        assertFalse(hierarchy.isNarrower("a", "x"));
+    }
+
+    @Test
+    public void collectsAllDescendants() {
+        Set<String> descendants = new TreeSet<>();
+        hierarchy.collectDescendants("c", null, descendants);
+        assertEquals(new TreeSet<>(Arrays.asList("d", "e", "g")), descendants);
+        hierarchy.collectDescendants("f", null, descendants);
+        assertEquals(new TreeSet<>(Arrays.asList("d", "e", "g")), descendants);
+    }
+
+    @Test
+    public void collectsDescendantsDownToDepth() {
+        Set<String> descendants = new TreeSet<>();
+        hierarchy.collectDescendants("a", 2, descendants);
+        assertEquals(new TreeSet<>(Arrays.asList("b", "c", "d", "g")), descendants);
+    }
+
+    @Test
+    public void findsTheLowestCommonAncestorOfATree() {
+        assertEquals(Arrays.asList("c"), hierarchy.getLowestCommonAncestors("g", "c"));
+        assertEquals(Arrays.asList("a"), hierarchy.getLowestCommonAncestors("b", "c"));
+        assertEquals(Arrays.asList("b", "a", "c"), hierarchy.getPath("b", "c"));
+    }
+
+    @Test
+    public void findsTheLowestCommonAncestorsOfAPolyhierarchy() {
+        assertEquals(Arrays.asList("c"), hierarchy.getLowestCommonAncestors("e", "g"));
+        assertEquals(Arrays.asList("e", "d", "c", "g"), hierarchy.getPath("e", "g"));
+        assertEquals(Arrays.asList("d"), hierarchy.getLowestCommonAncestors("d", "e"));
+        assertEquals(Arrays.asList("d", "e"), hierarchy.getPath("d", "e"));
+    }
+
+    @Test
+    public void hasNoPathBetweenUnrelatedConcepts() {
+        assertTrue(hierarchy.getLowestCommonAncestors("b", "f").isEmpty());
+        assertTrue(hierarchy.getPath("b", "f").isEmpty());
+        assertTrue(hierarchy.getPath("b", "x").isEmpty());
+    }
+
+    @Test
+    public void survivesCycles() {
+        ConceptHierarchy cyclic = ConceptHierarchy.build(Arrays.asList(
+                new BroaderRelation("x", "y"),
+                new BroaderRelation("y", "x"),
+                new BroaderRelation("z", "x")
+        ));
+        assertTrue(cyclic.isNarrower("z", "x"));
+        assertFalse(cyclic.isNarrower("x", "z"));
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LabelIndexTest {
+
+    private LabelIndex index;
+
+    @Before
+    public void setup() {
+        index = new LabelIndex(Arrays.asList(
+                new ConceptLabel("koira", "koira", "fi", true),
+                new ConceptLabel("koira", "hund", "sv", true),
+                new ConceptLabel("koira", "rakki", "fi", false),
+                new ConceptLabel("koirarotu", "Koirarodut", "fi", true),
+                new ConceptLabel("koirarotu", "koirarotu", "fi", false),
+                new ConceptLabel("kissa", "kissa", "fi", true),
+                new ConceptLabel("koiraeläin", "koira  eläimet", "fi", true)
+        ));
+    }
+
+    @Test
+    public void suggestsByPrefixInLabelOrder() {
+        assertEquals(Arrays.asList("koira", "koiraeläin", "koirarotu"), uris(index.suggest(" KOI", "fi", 10)));
+        assertEquals(Arrays.asList("koira", "koiraeläin"), uris(index.suggest("koi", "fi", 2)));
+        assertEquals(Arrays.asList("koiraeläin"), uris(index.suggest("koira el", "fi", 10)));
+    }
+
+    @Test
+    public void suggestsAlternativeLabels() {
+        assertEquals(Arrays.asList("koira"), uris(index.suggest("rak", "fi", 10)));
+    }
+
+    @Test
+    public void suggestsNothingForOtherLanguages() {
+        assertTrue(index.suggest("koi", "sv", 10).isEmpty());
+        assertTrue(index.suggest("koi", "en", 10).isEmpty());
+    }
+
+    private static List<String> uris(List<ConceptLabel> labels) {
+        return labels.stream().map(ConceptLabel::getUri).collect(Collectors.toList());
+    }
+}
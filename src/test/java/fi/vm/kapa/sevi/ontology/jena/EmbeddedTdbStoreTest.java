@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EmbeddedTdbStoreTest {
+
+    private static final String GRAPH = "http://example.org/graph";
+
+    private final EmbeddedTdbStore store = new EmbeddedTdbStore(TDBFactory.createDataset());
+    private final OntologySpool spool = new OntologySpool(2, true);
+
+    @After
+    public void tearDown() {
+        spool.close();
+        store.close();
+    }
+
+    @Test
+    public void testChunksAreLoadedIntoTheGraph() throws IOException {
+        List<Path> chunks = spool.spoolChunks(concepts("a", "b", "c"));
+        store.send(chunks.get(0), GRAPH, true);
+        store.send(chunks.get(1), GRAPH, false);
+        assertEquals(Collections.singletonMap("http://example.org/scheme", 3L),
+                SchemeCounts.query(store, Collections.singletonList(GRAPH)));
+
+        store.send(spool.spoolChunks(concepts("d")).get(0), GRAPH, true);
+        assertEquals(Collections.singletonMap("http://example.org/scheme", 1L),
+                SchemeCounts.query(store, Collections.singletonList(GRAPH)));
+
+        store.update("DROP SILENT GRAPH <" + GRAPH + ">");
+        assertEquals(Collections.emptyMap(), SchemeCounts.query(store, Collections.singletonList(GRAPH)));
+    }
+
+    @Test
+    public void testPoolQueriesTheEmbeddedDataset() throws IOException {
+        store.send(spool.spoolChunks(concepts("a", "b")).get(0), GRAPH, true);
+        FusekiReplicaPool pool = new FusekiReplicaPool(store);
+        assertEquals(Collections.singletonList(store), pool.getStores());
+
+        Query query = QueryFactory.create("SELECT ?concept WHERE { ?concept ?p ?o } ORDER BY ?concept");
+        query.addGraphURI(GRAPH);
+        List<String> concepts = new ArrayList<>();
+        try (FusekiReplicaPool.Execution execution = pool.execSelect(query, QueryKind.LOOKUP)) {
+            ResultSet results = execution.getResults();
+            results.forEachRemaining(solution -> concepts.add(solution.getResource("concept").getURI()));
+        }
+        assertEquals(2, concepts.size());
+        assertEquals("http://example.org/a", concepts.get(0));
+        assertFalse(concepts.contains("http://example.org/scheme"));
+    }
+
+    private static Model concepts(String... names) {
+        Model model = ModelFactory.createDefaultModel();
+        Resource scheme = model.createResource("http://example.org/scheme");
+        for (String name : names) {
+            model.add(model.createResource("http://example.org/" + name), SKOS.inScheme, scheme);
+        }
+        return model;
+    }
+}
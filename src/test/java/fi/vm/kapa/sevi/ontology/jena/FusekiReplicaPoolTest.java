@@ -0,0 +1,110 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(QueryExecutionFactory.class)
+@PowerMockIgnore({"javax.xml.*", "org.apache.xerces.*", "org.xml.*"})
+public class FusekiReplicaPoolTest {
+
+    private static final String FIRST = "http://fuseki1:3030";
+    private static final String SECOND = "http://fuseki2:3030";
+
+    private final Query query = QueryFactory.create("SELECT ?s WHERE { ?s ?p ?o }");
+
+    private final FusekiReplicaPool replicas = new FusekiReplicaPool(
+            new SparqlCircuitBreaker(10000, 600000, 7200000, 50, 10, 50, 80, 30000), FIRST + ", " + SECOND, false);
+
+    @Test
+    public void testWritesGoToEveryReplica() {
+        assertEquals(Arrays.asList(FIRST, SECOND), replicas.getBaseUris());
+    }
+
+    @Test
+    public void testRoutesToLeastOutstanding() {
+        PowerMockito.mockStatic(QueryExecutionFactory.class);
+        QueryExecution first = succeeding(FIRST);
+        QueryExecution second = succeeding(SECOND);
+
+        // The first replica is still busy with its query, so the next one goes to the second replica.
+        replicas.execSelect(query, QueryKind.LOOKUP);
+        replicas.execSelect(query, QueryKind.LOOKUP).close();
+        verify(first).execSelect();
+        verify(second).execSelect();
+    }
+
+    @Test
+    public void testFailingReplicaIsLeftOut() {
+        PowerMockito.mockStatic(QueryExecutionFactory.class);
+        QueryExecution first = mock(QueryExecution.class);
+        when(first.execSelect()).thenThrow(new QueryExceptionHTTP(503));
+        when(QueryExecutionFactory.sparqlService(eq(sparqlUri(FIRST)), any(Query.class))).thenReturn(first);
+        QueryExecution second = succeeding(SECOND);
+
+        try {
+            replicas.execSelect(query, QueryKind.LOOKUP);
+            fail("Expected the first replica to fail");
+        } catch (FusekiUnavailableException e) {
+            // The first replica is left out from now on.
+        }
+        replicas.execSelect(query, QueryKind.LOOKUP).close();
+        replicas.execSelect(query, QueryKind.LOOKUP).close();
+        verify(second, times(2)).execSelect();
+    }
+
+    private QueryExecution succeeding(String baseUri) {
+        QueryExecution qexec = mock(QueryExecution.class);
+        when(qexec.execSelect()).thenReturn(mock(ResultSet.class));
+        when(QueryExecutionFactory.sparqlService(eq(sparqlUri(baseUri)), any(Query.class))).thenReturn(qexec);
+        return qexec;
+    }
+
+    private static String sparqlUri(String baseUri) {
+        return baseUri + "/" + FusekiReplicaPool.DATASET + "/sparql";
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.jena.ontology.JupoConceptParser;
+import fi.vm.kapa.sevi.service.commons.ConceptType;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GenericConceptParserTest {
+
+    private static final String GRAPH = "http://example.org/graph";
+    private static final String PARENT = "http://example.org/parent";
+    private static final String CHILD = "http://example.org/child";
+
+    private final EmbeddedTdbStore store = new EmbeddedTdbStore(TDBFactory.createDataset());
+    private final OntologySpool spool = new OntologySpool(100, false);
+    private final JupoConceptParser parser = new JupoConceptParser();
+
+    @Before
+    public void setup() throws IOException {
+        store.send(spool.spool(concepts()), GRAPH, true);
+        FusekiReplicaPool replicas = new FusekiReplicaPool(store);
+        SchemeGraphs schemeGraphs = new SchemeGraphs(replicas, Long.MAX_VALUE);
+        schemeGraphs.update(Collections.singletonMap(ConceptType.JUPO.getInScheme(),
+                Collections.singletonList(GRAPH)), null);
+        ReflectionTestUtils.setField(parser, "replicas", replicas);
+        ReflectionTestUtils.setField(parser, "schemeGraphs", schemeGraphs);
+    }
+
+    @After
+    public void tearDown() {
+        spool.close();
+        store.close();
+    }
+
+    @Test
+    public void testTwoSwedishLabelsGiveOneRow() {
+        assertOneParent(collect(parser.getTopLevelConcepts()));
+        assertEquals(2, collect(parser.getConcepts()).size());
+        assertOneParent(collect(parser.getBroaderConceptsByUri(CHILD)));
+        assertTrue(parser.getConceptByUri(PARENT).getSwedish().startsWith("sv"));
+        assertEquals(1, collect(parser.getNarrowerConceptsByUri(PARENT)).size());
+    }
+
+    @Test
+    public void testConceptByExactPreferredLabel() {
+        AllConceptParser all = new AllConceptParser();
+        ReflectionTestUtils.setField(all, "replicas", ReflectionTestUtils.getField(parser, "replicas"));
+        ReflectionTestUtils.setField(all, "schemeGraphs", ReflectionTestUtils.getField(parser, "schemeGraphs"));
+        assertEquals(CHILD, all.getConceptByLabel("child").getId());
+        assertNull(all.getConceptByLabel("Child"));
+        assertNull(all.getConceptByLabel("sv1"));
+        assertNull(all.getConceptByLabel("child\" . ?uri ?p \"x"));
+    }
+
+    private static void assertOneParent(List<ConceptDTO> concepts) {
+        assertEquals(1, concepts.size());
+        assertEquals(PARENT, concepts.get(0).getId());
+        assertEquals("en", concepts.get(0).getEnglish());
+    }
+
+    private static List<ConceptDTO> collect(Stream<ConceptDTO> concepts) {
+        try (Stream<ConceptDTO> closing = concepts) {
+            return closing.collect(Collectors.toList());
+        }
+    }
+
+    private static Model concepts() {
+        Model model = ModelFactory.createDefaultModel();
+        Resource scheme = model.createResource(ConceptType.JUPO.getInScheme());
+        Resource parent = model.createResource(PARENT)
+                .addProperty(RDF.type, SKOS.Concept)
+                .addProperty(SKOS.inScheme, scheme)
+                .addProperty(SKOS.topConceptOf, scheme)
+                .addProperty(SKOS.prefLabel, "fi", "fi")
+                .addProperty(SKOS.prefLabel, "sv1", "sv")
+                .addProperty(SKOS.prefLabel, "sv2", "sv")
+                .addProperty(SKOS.prefLabel, "en", "en");
+        Resource child = model.createResource(CHILD)
+                .addProperty(RDF.type, SKOS.Concept)
+                .addProperty(SKOS.inScheme, scheme)
+                .addProperty(SKOS.prefLabel, "child", "fi")
+                .addProperty(SKOS.broader, parent)
+                .addProperty(SKOS.broaderTransitive, parent);
+        parent.addProperty(SKOS.narrower, child);
+        return model;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IngestReportTest {
+
+    private final IngestReport report = new IngestReport();
+
+    @Test
+    public void testLastRunIsReported() {
+        report.begin();
+        report.phase("fetch", System.currentTimeMillis() - 100);
+        report.phase("fetch", System.currentTimeMillis() - 50);
+        IngestReport.Source source = report.source("yso.ttl");
+        source.setBytes(1000);
+        source.setTriplesRead(30);
+        source.setTriplesStored(20);
+        source.addUploadMillis(5);
+        source.addUploadMillis(7);
+        report.setConceptsPerScheme(Collections.singletonMap("http://www.yso.fi/onto/yso/", 4L));
+        report.addIndexedConcepts(4);
+        assertNull(report.getLastRun());
+        report.end(null);
+
+        IngestReport.Run run = report.getLastRun();
+        assertNull(run.getFailure());
+        assertTrue(run.getPhases().get("fetch") >= 150);
+        assertEquals(12, run.getSources().get("yso.ttl").getUploadMillis());
+        assertEquals(4, run.getIndexedConcepts());
+
+        Map<String, Number> metrics = new HashMap<>();
+        for (Metric<?> metric : report.metrics()) {
+            metrics.put(metric.getName(), metric.getValue());
+        }
+        assertEquals(1, metrics.get("ontology.ingest.last.succeeded"));
+        assertEquals(1000L, metrics.get("ontology.ingest.last.bytes"));
+        assertEquals(30L, metrics.get("ontology.ingest.last.triples.read"));
+        assertEquals(20L, metrics.get("ontology.ingest.last.triples.stored"));
+        assertEquals(12L, metrics.get("ontology.ingest.last.upload"));
+        assertEquals(4L, metrics.get("ontology.ingest.last.concepts"));
+        assertTrue(metrics.containsKey("ontology.ingest.last.phase.fetch"));
+    }
+
+    @Test
+    public void testFailureIsReported() {
+        report.begin();
+        report.end(new IOException("Fuseki is down"));
+        assertEquals("Fuseki is down", report.getLastRun().getFailure());
+        assertTrue(report.metrics().stream().anyMatch(metric ->
+                metric.getName().equals("ontology.ingest.last.succeeded") && metric.getValue().intValue() == 0));
+    }
+
+    @Test
+    public void testRecordingIsIgnoredWithoutLoad() {
+        report.phase("search-index", System.currentTimeMillis());
+        report.source("yso.ttl").setBytes(1000);
+        report.addIndexedConcepts(4);
+        report.end(null);
+        assertNull(report.getLastRun());
+        assertTrue(report.metrics().isEmpty());
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.DatasetCreateException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IngestSchedulerTest {
+
+    private final IngestScheduler scheduler = new IngestScheduler(4, 2);
+
+    @Test
+    public void testFailingReadIsLeftOut() {
+        Map<String, String> results = scheduler.readAll(Arrays.asList("a", "broken", "c"), resource -> {
+            if ("broken".equals(resource)) {
+                throw new IOException("Cannot read " + resource);
+            }
+            return resource.toUpperCase();
+        });
+        assertEquals(Arrays.asList("a", "c"), Arrays.asList(results.keySet().toArray()));
+        assertEquals("C", results.get("c"));
+    }
+
+    @Test
+    public void testUploadsAreLimitedPerTarget() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Map<String, IngestScheduler.Upload> uploads = new LinkedHashMap<>();
+        for (int i = 0; i < 6; i++) {
+            uploads.put("graph" + i, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+            });
+        }
+        scheduler.uploadAll(Collections.singletonMap("target", uploads));
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testFirstFailureCancelsTheRest() {
+        AtomicInteger completed = new AtomicInteger();
+        Map<String, IngestScheduler.Upload> uploads = new LinkedHashMap<>();
+        uploads.put("broken", () -> {
+            throw new IOException("Fuseki is down");
+        });
+        for (int i = 0; i < 4; i++) {
+            uploads.put("graph" + i, () -> {
+                Thread.sleep(5000);
+                completed.incrementAndGet();
+            });
+        }
+        long start = System.currentTimeMillis();
+        try {
+            scheduler.uploadAll(Collections.singletonMap("target", uploads));
+            fail("Expected the upload to fail");
+        } catch (DatasetCreateException e) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(0, completed.get());
+        }
+    }
+
+    @Test
+    public void testNothingIsStartedAfterAFailure() {
+        AtomicInteger started = new AtomicInteger();
+        Map<String, IngestScheduler.Upload> uploads = new LinkedHashMap<>();
+        uploads.put("broken", () -> {
+            throw new IOException("Fuseki is down");
+        });
+        uploads.put("later", started::incrementAndGet);
+        try {
+            new IngestScheduler(4, 1).uploadAll(Collections.singletonMap("target", uploads));
+            fail("Expected the upload to fail");
+        } catch (DatasetCreateException e) {
+            assertEquals(0, started.get());
+        }
+    }
+}
@@ -49,12 +49,15 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(PowerMockRunner.class)
@@ -86,12 +89,17 @@ public class JupoConceptParserTest {
     @Mock
     private UpdateProcessor updateProcessor;
     
+    private static final FusekiReplicaPool REPLICAS = new FusekiReplicaPool(
+            new SparqlCircuitBreaker(10000, 600000, 7200000, 50, 10, 50, 80, 30000), "http://testing.test:1111", false);
+
     @BeforeClass
     public static void init() {
-        ReflectionTestUtils.setField(JUPO_CONCEPT_PARSER, "fusekiHost", "testing.test");
-        ReflectionTestUtils.setField(JUPO_CONCEPT_PARSER, "fusekiPort", "1111");
-        ReflectionTestUtils.setField(JENA_ONTOLOGY_FETCHER, "fusekiHost", "testing.test");
-        ReflectionTestUtils.setField(JENA_ONTOLOGY_FETCHER, "fusekiPort", "1111");
+        ReflectionTestUtils.setField(JUPO_CONCEPT_PARSER, "replicas", REPLICAS);
+        ReflectionTestUtils.setField(JENA_ONTOLOGY_FETCHER, "replicas", REPLICAS);
+        SchemeGraphs schemeGraphs = new SchemeGraphs(REPLICAS, Long.MAX_VALUE);
+        schemeGraphs.update(Collections.emptyMap(), null);
+        ReflectionTestUtils.setField(JUPO_CONCEPT_PARSER, "schemeGraphs", schemeGraphs);
+        ReflectionTestUtils.setField(JENA_ONTOLOGY_FETCHER, "schemeGraphs", schemeGraphs);
     }
     
     @Before
@@ -113,7 +121,10 @@ public class JupoConceptParserTest {
         when(QueryExecutionFactory.sparqlService(anyString(), (Query)anyObject())).thenReturn(qexec);
         // return values also for 'broader' query. Thats why two thenReturn methods.
         when(qexec.execSelect()).thenReturn(createResultSet()).thenReturn(createResultSet());
-        List<ConceptDTO> dtos = JUPO_CONCEPT_PARSER.getBroaderConceptsByUri("test").collect(Collectors.toList());
+        List<ConceptDTO> dtos;
+        try (Stream<ConceptDTO> broader = JUPO_CONCEPT_PARSER.getBroaderConceptsByUri("test")) {
+            dtos = broader.collect(Collectors.toList());
+        }
         Assert.assertEquals(RESULTSET_SIZE, dtos.size());
         assertEquals("http://urn.fi/URN:NBN:fi:au:ptvl:KE12", dtos.get(1).getId());
         assertEquals("Kuntoutus", dtos.get(1).getLabel());
@@ -124,12 +135,18 @@ public class JupoConceptParserTest {
         basicMockSetup();        
         ConceptDTO dto = JUPO_CONCEPT_PARSER.getConceptByUri("http://www.yso.fi/onto/jupo/p1074");
         assertEquals("http://www.yso.fi/onto/jupo/p1074", dto.getId());
+        // The lookup reads only the first result, but the query is still closed.
+        assertEquals(0, REPLICAS.getOutstanding());
+        verify(qexec).close();
     }
     
     @Test
     public void testGetConcepts() {
         basicMockSetup();        
-        List<ConceptDTO> dtos = JUPO_CONCEPT_PARSER.getConcepts().collect(Collectors.toList());
+        List<ConceptDTO> dtos;
+        try (Stream<ConceptDTO> concepts = JUPO_CONCEPT_PARSER.getConcepts()) {
+            dtos = concepts.collect(Collectors.toList());
+        }
         Assert.assertEquals(RESULTSET_SIZE, dtos.size());
     }
     
@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OntologyPrunerTest {
+
+    private static final String NS = "http://example.org/onto/";
+
+    @Test
+    public void testUnusedDataIsDropped() {
+        Model model = ModelFactory.createDefaultModel();
+        Resource scheme = model.createResource(NS);
+        Resource aggregate = model.createResource(NS + "aggregateconceptscheme");
+        Resource concept = model.createResource(NS + "p1");
+        Resource deprecated = model.createResource(NS + "p2");
+        model.add(scheme, RDF.type, SKOS.ConceptScheme);
+        model.add(aggregate, RDF.type, SKOS.ConceptScheme);
+        model.add(concept, RDF.type, SKOS.Concept);
+        model.add(concept, RDF.type, model.createResource("http://example.org/meta/Kind"));
+        model.add(concept, SKOS.inScheme, scheme);
+        model.add(concept, SKOS.inScheme, aggregate);
+        model.add(concept, SKOS.prefLabel, "Käsite", "fi");
+        model.add(concept, SKOS.prefLabel, "Begrepp", "sv-FI");
+        model.add(concept, SKOS.prefLabel, "Concept", "de");
+        model.add(concept, SKOS.notation, "P1");
+        model.add(concept, DCTerms.modified, "2016-01-01");
+        model.add(concept, SKOS.narrower, deprecated);
+
+        Model other = ModelFactory.createDefaultModel();
+        other.add(deprecated, RDF.type, OntologyPruner.DEPRECATED_CONCEPT);
+        other.add(deprecated, SKOS.prefLabel, "Vanha", "fi");
+
+        long dropped = OntologyPruner.prune(Arrays.asList(model, other), Arrays.asList("fi", "sv", "en"));
+
+        assertEquals(8, dropped);
+        assertTrue(model.contains(concept, RDF.type, SKOS.Concept));
+        assertTrue(model.contains(concept, SKOS.inScheme, scheme));
+        assertTrue(model.contains(concept, SKOS.prefLabel, "Käsite", "fi"));
+        assertTrue(model.contains(concept, SKOS.prefLabel, "Begrepp", "sv-FI"));
+        assertTrue(model.contains(concept, SKOS.notation, "P1"));
+        assertTrue(model.contains(scheme, RDF.type, SKOS.ConceptScheme));
+        assertEquals(6, model.size());
+        assertFalse(model.containsResource(aggregate));
+        assertFalse(model.containsResource(deprecated));
+        assertTrue(other.isEmpty());
+    }
+}
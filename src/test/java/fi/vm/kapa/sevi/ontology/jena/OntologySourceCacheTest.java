@@ -0,0 +1,119 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OntologySourceCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private volatile String body = "<a> <b> <c> .";
+    private volatile String etag = "\"v1\"";
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+
+    private OntologySourceCache cache;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/yso.ttl", exchange -> {
+            String requested = exchange.getRequestHeaders().getFirst("If-None-Match");
+            ifNoneMatch.add(String.valueOf(requested));
+            if (etag.equals(requested)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/yso.ttl";
+        cache = new OntologySourceCache(folder.getRoot().getAbsolutePath());
+    }
+
+    @After
+    public void teardown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testUnchangedSourceIsNotDownloadedAgain() throws IOException {
+        Path first = cache.fetch(url, Proxy.NO_PROXY);
+        Path second = cache.fetch(url, Proxy.NO_PROXY);
+
+        assertEquals(first, second);
+        assertEquals("\"v1\"", ifNoneMatch.get(1));
+        assertEquals(body, new String(Files.readAllBytes(second), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChangedSourceGetsNewHash() throws IOException {
+        Path first = cache.fetch(url, Proxy.NO_PROXY);
+        body = "<a> <b> <d> .";
+        etag = "\"v2\"";
+        Path second = cache.fetch(url, Proxy.NO_PROXY);
+        cache.removeUnused();
+
+        assertNotEquals(OntologySourceCache.hashOf(first), OntologySourceCache.hashOf(second));
+        assertTrue(Files.exists(second));
+        assertFalse(Files.exists(first));
+    }
+
+    @Test
+    public void testSameContentHasSameHash() throws IOException {
+        Path remote = cache.fetch(url, Proxy.NO_PROXY);
+        Path local = cache.store("classpath:yso.ttl",
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(OntologySourceCache.hashOf(remote), OntologySourceCache.hashOf(local));
+    }
+}
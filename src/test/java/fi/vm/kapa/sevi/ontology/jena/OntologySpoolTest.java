@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OntologySpoolTest {
+
+    @Test
+    public void testModelIsSplitIntoCompressedChunks() throws IOException {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 25; i++) {
+            model.add(model.createResource("http://example.org/" + i), SKOS.prefLabel, "Käsite " + i, "fi");
+        }
+        List<Path> chunks;
+        Model read = ModelFactory.createDefaultModel();
+        try (OntologySpool spool = new OntologySpool(10, true)) {
+            chunks = spool.spoolChunks(model);
+            assertEquals(3, chunks.size());
+            for (Path chunk : chunks) {
+                assertTrue(chunk.getFileName().toString().endsWith(".nt.gz"));
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(chunk))) {
+                    RDFDataMgr.read(read, in, Lang.NTRIPLES);
+                }
+            }
+        }
+        assertTrue(model.isIsomorphicWith(read));
+        chunks.forEach(chunk -> assertFalse(Files.exists(chunk)));
+    }
+
+    @Test
+    public void testEmptyModelHasOneChunk() throws IOException {
+        try (OntologySpool spool = new OntologySpool(10, false)) {
+            List<Path> chunks = spool.spoolChunks(ModelFactory.createDefaultModel());
+            assertEquals(1, chunks.size());
+            assertEquals(0, Files.size(chunks.get(0)));
+        }
+    }
+
+    @Test
+    public void testSortedRunsAreMerged() throws IOException {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 25; i++) {
+            model.add(model.createResource("http://example.org/" + i), SKOS.prefLabel, "Käsite " + i, "fi");
+        }
+        try (OntologySpool spool = new OntologySpool(10, true)) {
+            List<String> lines = Files.readAllLines(spool.spoolSorted(model), StandardCharsets.UTF_8);
+            assertEquals(25, lines.size());
+            List<String> sorted = new ArrayList<>(lines);
+            Collections.sort(sorted);
+            assertEquals(sorted, lines);
+            Model read = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(read, new StringReader(String.join("\n", lines)), null, Lang.NTRIPLES);
+            assertTrue(model.isIsomorphicWith(read));
+        }
+    }
+
+    @Test
+    public void testBlankNodesCannotBeSorted() throws IOException {
+        Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource(), SKOS.prefLabel, "Nimetön");
+        try (OntologySpool spool = new OntologySpool(10, false)) {
+            assertNull(spool.spoolSorted(model));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SchemeCountsTest {
+
+    private static final String SCHEME = "http://example.org/scheme";
+
+    @Test
+    public void testConceptsAreCountedOnceAcrossGraphs() {
+        Model first = ModelFactory.createDefaultModel();
+        Resource scheme = first.createResource(SCHEME);
+        first.add(first.createResource("http://example.org/a"), SKOS.inScheme, scheme);
+        first.add(first.createResource("http://example.org/b"), SKOS.inScheme, scheme);
+        Model second = ModelFactory.createDefaultModel();
+        second.add(second.createResource("http://example.org/b"), SKOS.inScheme, scheme);
+        second.add(second.createResource("http://example.org/c"), SKOS.inScheme, "not a scheme");
+
+        Map<String, Long> counts = SchemeCounts.of(Arrays.asList(first, second));
+        assertEquals(Collections.singletonMap(SCHEME, 2L), counts);
+    }
+
+    @Test
+    public void testCompleteLoadPasses() {
+        Map<String, Long> expected = Collections.singletonMap(SCHEME, 80L);
+        assertTrue(SchemeCounts.compare(expected, expected, Collections.singletonMap(SCHEME, 100L), 50).isEmpty());
+    }
+
+    @Test
+    public void testIncompleteLoadFails() {
+        Map<String, Long> expected = Collections.singletonMap(SCHEME, 100L);
+        List<String> problems = SchemeCounts.compare(expected, Collections.singletonMap(SCHEME, 99L),
+                Collections.emptyMap(), 50);
+        assertEquals(Collections.singletonList(SCHEME + ": 99 of 100 concepts loaded"), problems);
+    }
+
+    @Test
+    public void testShrunkenOrMissingSchemeFails() {
+        Map<String, Long> live = new HashMap<>();
+        live.put(SCHEME, 100L);
+        live.put("http://example.org/gone", 10L);
+        Map<String, Long> expected = Collections.singletonMap(SCHEME, 40L);
+        List<String> problems = SchemeCounts.compare(expected, expected, live, 50);
+        assertEquals(2, problems.size());
+        assertTrue(problems.contains(SCHEME + ": 40 concepts, down from 100"));
+        assertTrue(problems.contains("http://example.org/gone: 0 concepts, down from 10"));
+    }
+
+    @Test
+    public void testGraphNamesOfGeneration() {
+        assertEquals("http://example.org/onto.ttl", JenaOntologyFetcher.graphName(null, "http://example.org/onto.ttl"));
+        assertEquals("urn:x-sevi:ontology:generation:0123456789ab:http://example.org/onto.ttl",
+                JenaOntologyFetcher.graphName("0123456789ab", "http://example.org/onto.ttl"));
+    }
+}
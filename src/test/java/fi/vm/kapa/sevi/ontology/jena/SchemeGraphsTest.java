@@ -0,0 +1,103 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.tdb.TDBFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class SchemeGraphsTest {
+
+    private static final String QUERY = "SELECT ?uri WHERE { ?uri ?p ?o }";
+
+    private final SchemeGraphs schemeGraphs = new SchemeGraphs(mock(FusekiReplicaPool.class), Long.MAX_VALUE);
+
+    @Test
+    public void testScopesToSchemeGraphs() {
+        schemeGraphs.update(mapping(), null);
+        Query query = schemeGraphs.scope(QueryFactory.create(QUERY), "http://urn.fi/URN:NBN:fi:au:ptvl:KR");
+        assertEquals(Collections.singletonList("classpath:ptvl-skos.ttl"), query.getGraphURIs());
+    }
+
+    @Test
+    public void testScopesUnmappedToAllGraphs() {
+        schemeGraphs.update(mapping(), null);
+        Query query = schemeGraphs.scope(QueryFactory.create(QUERY), "");
+        assertEquals(2, query.getGraphURIs().size());
+        assertTrue(query.getGraphURIs().containsAll(
+                Arrays.asList("classpath:ptvl-skos.ttl", "classpath:jupo-skos.ttl")));
+    }
+
+    @Test
+    public void testLeavesQueryWithoutMapping() {
+        schemeGraphs.update(Collections.emptyMap(), null);
+        Query query = schemeGraphs.scope(QueryFactory.create(QUERY), "http://www.yso.fi/onto/jupo/");
+        assertTrue(query.getGraphURIs().isEmpty());
+    }
+
+    @Test
+    public void testReadsFingerprintWithMapping() {
+        EmbeddedTdbStore store = new EmbeddedTdbStore(TDBFactory.createDataset());
+        // Read again on every call.
+        SchemeGraphs stored = new SchemeGraphs(new FusekiReplicaPool(store), -1);
+        store.update("INSERT DATA { <http://www.yso.fi/onto/jupo/> <" + SchemeGraphs.GRAPH_PROPERTY
+                + "> <classpath:jupo-skos.ttl> . <" + JenaOntologyFetcher.LOAD_RESOURCE + "> <"
+                + JenaOntologyFetcher.FINGERPRINT_PROPERTY + "> \"first\" }");
+        assertEquals("first", stored.getFingerprint());
+        Query query = stored.scope(QueryFactory.create(QUERY), "http://www.yso.fi/onto/jupo/");
+        assertEquals(Collections.singletonList("classpath:jupo-skos.ttl"), query.getGraphURIs());
+
+        store.update("DELETE WHERE { <" + JenaOntologyFetcher.LOAD_RESOURCE + "> ?p ?o }; INSERT DATA { <"
+                + JenaOntologyFetcher.LOAD_RESOURCE + "> <" + JenaOntologyFetcher.FINGERPRINT_PROPERTY
+                + "> \"second\" }");
+        assertEquals("second", stored.getFingerprint());
+    }
+
+    @Test
+    public void testNoFingerprintAfterDelete() {
+        schemeGraphs.update(mapping(), "first");
+        assertEquals("first", schemeGraphs.getFingerprint());
+        schemeGraphs.update(Collections.emptyMap(), null);
+        assertNull(schemeGraphs.getFingerprint());
+    }
+
+    private static Map<String, List<String>> mapping() {
+        Map<String, List<String>> mapping = new HashMap<>();
+        mapping.put("http://urn.fi/URN:NBN:fi:au:ptvl:", Collections.singletonList("classpath:ptvl-skos.ttl"));
+        mapping.put("http://urn.fi/URN:NBN:fi:au:ptvl:KR", Collections.singletonList("classpath:ptvl-skos.ttl"));
+        mapping.put("http://www.yso.fi/onto/jupo/", Collections.singletonList("classpath:jupo-skos.ttl"));
+        return mapping;
+    }
+}
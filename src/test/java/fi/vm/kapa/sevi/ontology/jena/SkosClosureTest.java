@@ -0,0 +1,73 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SkosClosureTest {
+
+    private final Model model = ModelFactory.createDefaultModel();
+    private final Resource scheme = model.createResource("http://example.org/scheme");
+    private final Resource top = model.createResource("http://example.org/top");
+    private final Resource middle = model.createResource("http://example.org/middle");
+    private final Resource leaf = model.createResource("http://example.org/leaf");
+
+    @Test
+    public void testInversesAndClosure() {
+        model.add(top, SKOS.topConceptOf, scheme);
+        model.add(top, SKOS.narrower, middle);
+        model.add(leaf, SKOS.broader, middle);
+
+        SkosClosure.materialize(model);
+
+        assertTrue(model.contains(middle, SKOS.broader, top));
+        assertTrue(model.contains(middle, SKOS.narrower, leaf));
+        assertTrue(model.contains(leaf, SKOS.broaderTransitive, middle));
+        assertTrue(model.contains(leaf, SKOS.broaderTransitive, top));
+        assertTrue(model.contains(top, SKOS.narrowerTransitive, leaf));
+        assertTrue(model.contains(scheme, SKOS.hasTopConcept, top));
+        assertTrue(model.contains(top, SKOS.inScheme, scheme));
+        assertFalse(model.contains(top, SKOS.broaderTransitive, (Resource) null));
+    }
+
+    @Test
+    public void testCycleTerminates() {
+        model.add(leaf, SKOS.broader, middle);
+        model.add(middle, SKOS.broader, leaf);
+
+        long added = SkosClosure.materialize(model);
+
+        assertTrue(model.contains(leaf, SKOS.broaderTransitive, middle));
+        assertFalse(model.contains(leaf, SKOS.broaderTransitive, leaf));
+        // The inverse narrower triples and the transitive triples in both directions.
+        assertEquals(6, added);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SparqlCircuitBreakerTest {
+
+    @Test
+    public void testTimeoutIsSetByQueryKind() {
+        SparqlCircuitBreaker breaker = breaker(60000);
+        QueryExecution qexec = succeeding();
+        breaker.execSelect(qexec, QueryKind.LIST);
+        verify(qexec).setTimeout(600000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testOpensAfterFailuresAndFailsFast() {
+        SparqlCircuitBreaker breaker = breaker(60000);
+        failTwice(breaker);
+        assertEquals(SparqlCircuitBreaker.State.OPEN, breaker.getState());
+
+        QueryExecution qexec = succeeding();
+        try {
+            breaker.execSelect(qexec, QueryKind.LOOKUP);
+            fail("Expected the open breaker to fail fast");
+        } catch (FusekiUnavailableException e) {
+            verify(qexec, never()).execSelect();
+            verify(qexec).close();
+        }
+    }
+
+    @Test
+    public void testClosesAfterSuccessfulTrial() {
+        SparqlCircuitBreaker breaker = breaker(0);
+        failTwice(breaker);
+
+        QueryExecution qexec = succeeding();
+        assertSame(qexec.execSelect(), breaker.execSelect(qexec, QueryKind.LOOKUP));
+        assertEquals(SparqlCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private static SparqlCircuitBreaker breaker(long openMillis) {
+        return new SparqlCircuitBreaker(10000, 600000, 7200000, 10, 2, 50, 80, openMillis);
+    }
+
+    private static void failTwice(SparqlCircuitBreaker breaker) {
+        for (int i = 0; i < 2; i++) {
+            QueryExecution qexec = mock(QueryExecution.class);
+            when(qexec.execSelect()).thenThrow(new QueryExceptionHTTP(503));
+            try {
+                breaker.execSelect(qexec, QueryKind.LOOKUP);
+                fail("Expected the query to fail");
+            } catch (FusekiUnavailableException e) {
+                verify(qexec).close();
+            }
+        }
+    }
+
+    private static QueryExecution succeeding() {
+        QueryExecution qexec = mock(QueryExecution.class);
+        when(qexec.execSelect()).thenReturn(mock(ResultSet.class));
+        return qexec;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.jena;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TripleDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String GRAPH = "classpath:jupo-skos.ttl";
+
+    private final OntologySpool spool = new OntologySpool(2, false);
+
+    @After
+    public void tearDown() {
+        spool.close();
+    }
+
+    @Test
+    public void testDiffAgainstSnapshot() throws IOException {
+        Model before = ModelFactory.createDefaultModel();
+        Resource a = before.createResource("http://example.org/a");
+        Resource b = before.createResource("http://example.org/b");
+        before.add(a, SKOS.prefLabel, "Vanha", "fi");
+        before.add(a, SKOS.broader, b);
+        before.add(b, SKOS.prefLabel, "Ylä", "fi");
+        Path snapshot = spool.spoolSorted(before);
+
+        Model after = ModelFactory.createDefaultModel();
+        after.add(before);
+        after.remove(a, SKOS.prefLabel, after.createLiteral("Vanha", "fi"));
+        after.add(a, SKOS.prefLabel, "Uusi", "fi");
+
+        TripleDiff diff = TripleDiff.between(snapshot, spool.spoolSorted(after), GRAPH, 10, spool);
+
+        assertEquals(1, diff.getRemoved());
+        assertEquals(1, diff.getAdded());
+        assertEquals(1, diff.getChangedSubjects());
+        List<String> updates = read(diff.getUpdates());
+        assertEquals(Arrays.asList(
+                "DELETE DATA { GRAPH <" + GRAPH + "> {\n<http://example.org/a> <" + SKOS.prefLabel.getURI()
+                        + "> \"Vanha\"@fi .\n} }",
+                "INSERT DATA { GRAPH <" + GRAPH + "> {\n<http://example.org/a> <" + SKOS.prefLabel.getURI()
+                        + "> \"Uusi\"@fi .\n} }"), updates);
+    }
+
+    @Test
+    public void testUpdatesAreBatchedAndValid() throws IOException {
+        Model after = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 5; i++) {
+            after.add(after.createResource("http://example.org/c" + i), SKOS.prefLabel, "Käsite \"" + i + "\"", "fi");
+        }
+        Path empty = folder.newFile("empty.nt").toPath();
+
+        TripleDiff diff = TripleDiff.between(empty, spool.spoolSorted(after), GRAPH, 2, spool);
+
+        assertEquals(0, diff.getRemoved());
+        assertEquals(5, diff.getAdded());
+        assertEquals(5, diff.getChangedSubjects());
+        List<String> updates = read(diff.getUpdates());
+        assertEquals(3, updates.size());
+        assertTrue(updates.get(0).startsWith("INSERT DATA { GRAPH <" + GRAPH + "> {"));
+        updates.forEach(UpdateFactory::create);
+    }
+
+    @Test
+    public void testNoUpdatesForSameLines() throws IOException {
+        Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("http://example.org/a"), SKOS.prefLabel, "Sama", "fi");
+
+        TripleDiff diff = TripleDiff.between(spool.spoolSorted(model), spool.spoolSorted(model), GRAPH, 2, spool);
+
+        assertTrue(diff.isEmpty());
+        assertEquals(0, diff.getChangedSubjects());
+    }
+
+    private static List<String> read(List<Path> updates) throws IOException {
+        List<String> contents = new ArrayList<>();
+        for (Path update : updates) {
+            contents.add(new String(Files.readAllBytes(update), StandardCharsets.UTF_8));
+        }
+        return contents;
+    }
+}
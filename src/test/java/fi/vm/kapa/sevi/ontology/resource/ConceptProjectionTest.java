@@ -0,0 +1,87 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fi.vm.kapa.sevi.configuration.CustomObjectMapper;
+import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.exception.InvalidParameterException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConceptProjectionTest {
+
+    private final CustomObjectMapper mapper = new CustomObjectMapper();
+
+    private final List<ConceptDTO> concepts = Arrays.asList(
+            new ConceptDTO("http://localhost/dummy/1", "dummy", "D1", "http://localhost/dummy"));
+
+    @Test
+    public void writesAllPropertiesByDefault() throws Exception {
+        assertEquals(Arrays.asList("id", "notation", "label", "finnish", "swedish", "english", "conceptType",
+                "scheme"), propertyNames(ConceptProjection.of(null, null)));
+    }
+
+    @Test
+    public void writesSelectedFieldsWithId() throws Exception {
+        assertEquals(Arrays.asList("id", "label"), propertyNames(ConceptProjection.of("label", null)));
+    }
+
+    @Test
+    public void writesCompactConcepts() throws Exception {
+        assertEquals(Arrays.asList("id", "notation", "label", "conceptType"),
+                propertyNames(ConceptProjection.of(null, "true")));
+    }
+
+    @Test
+    public void writesBareUris() throws Exception {
+        ConceptProjection projection = ConceptProjection.of("label", "uris");
+        assertEquals("[\"http://localhost/dummy/1\"]",
+                projection.writer(mapper).writeValueAsString(projection.apply(concepts)));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void rejectsUnknownFields() {
+        ConceptProjection.of("label,password", null);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void rejectsUnknownCompactMode() {
+        ConceptProjection.of(null, "tiny");
+    }
+
+    private List<String> propertyNames(ConceptProjection projection) throws Exception {
+        JsonNode json = mapper.readTree(projection.writer(mapper).writeValueAsString(projection.apply(concepts)));
+        List<String> names = new ArrayList<>();
+        for (Iterator<String> it = json.get(0).fieldNames(); it.hasNext(); ) {
+            names.add(it.next());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.ontology.service.OntologyService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConditionalGetFilterTest {
+
+    @Mock
+    private OntologyService ontologyService;
+
+    @Mock
+    private ContainerRequestContext request;
+
+    @Mock
+    private Request conditions;
+
+    @InjectMocks
+    private ConditionalGetFilter filter;
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(filter, "cacheControl", "public, max-age=60");
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://localhost/ontology/v1/concepts/jupo"));
+        when(request.getMethod()).thenReturn(HttpMethod.GET);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        when(request.getAcceptableMediaTypes()).thenReturn(Collections.emptyList());
+        when(request.getRequest()).thenReturn(conditions);
+        when(ontologyService.getDatasetVersion()).thenReturn("1.0");
+    }
+
+    @Test
+    public void notModifiedVariesByTheNegotiatedHeaders() {
+        Response.ResponseBuilder notModified = mock(Response.ResponseBuilder.class);
+        when(notModified.header(any(String.class), any())).thenReturn(notModified);
+        when(conditions.evaluatePreconditions(any(EntityTag.class))).thenReturn(notModified);
+
+        filter.filter(request);
+
+        verify(notModified).header(HttpHeaders.VARY, ConditionalGetFilter.VARY);
+        verify(request).abortWith(any());
+    }
+
+    @Test
+    public void fullResponseVariesByTheNegotiatedHeaders() {
+        filter.filter(request);
+        ArgumentCaptor<Object> entityTag = ArgumentCaptor.forClass(Object.class);
+        verify(request).setProperty(any(String.class), entityTag.capture());
+        when(request.getProperty(any(String.class))).thenReturn(entityTag.getValue());
+        ContainerResponseContext response = mock(ContainerResponseContext.class);
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        when(response.getStatus()).thenReturn(200);
+        when(response.getHeaders()).thenReturn(headers);
+
+        filter.filter(request, response);
+
+        assertEquals("Accept, Accept-Encoding", headers.getFirst(HttpHeaders.VARY));
+        assertEquals("public, max-age=60", headers.getFirst(HttpHeaders.CACHE_CONTROL));
+    }
+}
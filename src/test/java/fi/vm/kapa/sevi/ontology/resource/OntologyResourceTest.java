@@ -0,0 +1,64 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.ontology.dto.NarrowerCheckDTO;
+import fi.vm.kapa.sevi.ontology.exception.InvalidParameterException;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+
+public class OntologyResourceTest {
+
+    private final OntologyResource resource = new OntologyResource();
+
+    private final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+    @Test(expected = InvalidParameterException.class)
+    public void narrowerChecksWithoutBodyAreRejected() {
+        resource.checkNarrowerConcepts(asyncResponse, null);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void narrowerChecksWithNullItemsAreRejected() {
+        resource.checkNarrowerConcepts(asyncResponse, Collections.<NarrowerCheckDTO>singletonList(null));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void descendantsWithoutBodyAreRejected() {
+        resource.findDescendantConcepts(asyncResponse, 2, null);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void notationsWithoutBodyAreRejected() {
+        resource.findConceptsByNotation(asyncResponse, null, null);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void suggestionsWithoutTextAreRejected() {
+        resource.suggestConcepts(asyncResponse, null, null, "fi", 10);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.ontology.exception.ConceptNotFoundException;
+import fi.vm.kapa.sevi.ontology.exception.ServiceOverloadedException;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class ReadRequestExecutorTest {
+
+    private final ReadRequestExecutor executor = new ReadRequestExecutor(1, 1);
+
+    @After
+    public void teardown() {
+        executor.stop();
+    }
+
+    @Test
+    public void resumesWithResultOrException() {
+        AsyncResponse result = mock(AsyncResponse.class);
+        AsyncResponse failure = mock(AsyncResponse.class);
+
+        executor.execute(result, () -> "concept");
+        executor.execute(failure, () -> {
+            throw new ConceptNotFoundException("uri");
+        });
+
+        verify(result, timeout(1000)).resume("concept");
+        verify(failure, timeout(1000)).resume(any(ConceptNotFoundException.class));
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(mock(AsyncResponse.class), () -> {
+            running.countDown();
+            try {
+                return release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        executor.execute(mock(AsyncResponse.class), () -> "queued");
+
+        AsyncResponse rejected = mock(AsyncResponse.class);
+        executor.execute(rejected, () -> "rejected");
+
+        verify(rejected).resume(any(ServiceOverloadedException.class));
+        release.countDown();
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.resource;
+
+import fi.vm.kapa.sevi.configuration.CustomObjectMapper;
+import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.service.OntologyService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SerializedResponseCacheTest {
+
+    @Mock
+    private OntologyService ontologyService;
+
+    @Mock
+    private HttpHeaders headers;
+
+    @InjectMocks
+    private SerializedResponseCache cache;
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    private final List<ConceptDTO> conceptList = Arrays.asList(
+            new ConceptDTO("http://localhost/dummy/1", "dummy", "", "http://localhost/dummy"));
+
+    private final Supplier<List<ConceptDTO>> concepts = () -> {
+        queries.incrementAndGet();
+        return conceptList;
+    };
+
+    @Before
+    public void setup() {
+        when(ontologyService.getDatasetVersion()).thenReturn("1.0");
+    }
+
+    @Test
+    public void servesCachedBytesUntilVersionChanges() throws Exception {
+        byte[] first = (byte[]) cache.respond("key", headers, ConceptProjection.FULL, concepts).getEntity();
+        byte[] second = (byte[]) cache.respond("key", headers, ConceptProjection.FULL, concepts).getEntity();
+        assertEquals(1, queries.get());
+        assertArrayEquals(new CustomObjectMapper().writeValueAsBytes(conceptList), first);
+        assertArrayEquals(first, second);
+
+        when(ontologyService.getDatasetVersion()).thenReturn("2.0");
+        cache.respond("key", headers, ConceptProjection.FULL, concepts);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void servesGzipWhenAccepted() throws Exception {
+        byte[] json = (byte[]) cache.respond("key", headers, ConceptProjection.FULL, concepts).getEntity();
+        when(headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING))
+                .thenReturn(Collections.singletonList("gzip, deflate"));
+
+        Response response = cache.respond("key", headers, ConceptProjection.FULL, concepts);
+
+        assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(json, gunzip((byte[]) response.getEntity()));
+        assertNull(cache.respond("key", mock(HttpHeaders.class), ConceptProjection.FULL, concepts)
+                .getHeaderString(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void servesAcceptedBinaryFormat() {
+        when(headers.getAcceptableMediaTypes()).thenReturn(Arrays.asList(
+                SerializedResponseCache.APPLICATION_CBOR_TYPE, MediaType.APPLICATION_JSON_TYPE));
+
+        Response response = cache.respond("key", headers, ConceptProjection.FULL, concepts);
+
+        assertEquals(SerializedResponseCache.APPLICATION_CBOR_TYPE, response.getMediaType());
+        assertEquals("Accept, Accept-Encoding", response.getHeaderString(HttpHeaders.VARY));
+        assertEquals(MediaType.APPLICATION_JSON_TYPE,
+                cache.respond("key", mock(HttpHeaders.class), ConceptProjection.FULL, concepts).getMediaType());
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void cachesProjectionsSeparately() {
+        cache.respond("key", headers, ConceptProjection.FULL, concepts);
+        byte[] uris = (byte[]) cache.respond("key", headers, ConceptProjection.of(null, "uris"), concepts).getEntity();
+
+        assertEquals("[\"http://localhost/dummy/1\"]", new String(uris, StandardCharsets.UTF_8));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void warmedResponseIsServed() {
+        cache.warm("key", concepts);
+        cache.warm("key", concepts);
+        cache.respond("key", headers, ConceptProjection.FULL, concepts);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void parsesAcceptEncoding() {
+        assertTrue(SerializedResponseCache.acceptsGzip(Collections.singletonList("deflate, GZIP;q=0.5")));
+        assertFalse(SerializedResponseCache.acceptsGzip(Collections.singletonList("gzip;q=0, deflate")));
+        assertFalse(SerializedResponseCache.acceptsGzip(Collections.singletonList("identity")));
+        assertFalse(SerializedResponseCache.acceptsGzip(null));
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.service;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import fi.vm.kapa.sevi.ontology.index.ConceptIndex;
+import fi.vm.kapa.sevi.ontology.jena.JenaConceptParser;
+import fi.vm.kapa.sevi.service.commons.ConceptType;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConceptIndexServiceTest {
+
+    private final ConceptIndexService service = new ConceptIndexService();
+
+    @Test
+    public void testSlowIndexDoesNotHoldUpOtherTypes() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JenaConceptParser slow = parser(ConceptType.YSO);
+        when(slow.getConcepts()).thenAnswer(invocation -> {
+            building.countDown();
+            release.await();
+            return Stream.empty();
+        });
+        JenaConceptParser fast = parser(ConceptType.JUPO);
+
+        CompletableFuture<ConceptIndex> first = CompletableFuture.supplyAsync(() -> service.getIndex(slow));
+        CompletableFuture<ConceptIndex> second = CompletableFuture.supplyAsync(() -> service.getIndex(slow));
+        assertTrue(building.await(5, TimeUnit.SECONDS));
+        assertNotNull(service.getIndex(fast));
+
+        release.countDown();
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        verify(slow, times(1)).getConcepts();
+    }
+
+    @Test
+    public void testFailedBuildIsRetried() {
+        JenaConceptParser parser = parser(ConceptType.YSO);
+        when(parser.getConcepts()).thenThrow(new FusekiUnavailableException("down", null))
+                .thenReturn(Stream.empty());
+        try {
+            service.getIndex(parser);
+            fail("Expected the build to fail");
+        } catch (FusekiUnavailableException e) {
+            assertTrue(e.getMessage().endsWith("down"));
+        }
+        assertNotNull(service.getIndex(parser));
+    }
+
+    private static JenaConceptParser parser(ConceptType type) {
+        JenaConceptParser parser = mock(JenaConceptParser.class);
+        when(parser.getConceptType()).thenReturn(type);
+        when(parser.getConcepts()).thenReturn(Stream.empty());
+        when(parser.getBroaderRelations()).thenReturn(Stream.empty());
+        when(parser.getLabels()).thenReturn(Stream.empty());
+        return parser;
+    }
+}
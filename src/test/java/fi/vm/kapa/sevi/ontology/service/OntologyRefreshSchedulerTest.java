@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.service;
+
+import fi.vm.kapa.sevi.ontology.exception.DatasetCreateException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalTime;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OntologyRefreshSchedulerTest {
+
+    @Mock
+    private OntologyService ontologyService;
+
+    @Mock
+    private CacheWarmer warmer;
+
+    @InjectMocks
+    private OntologyRefreshScheduler scheduler;
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(scheduler, "warmers", Collections.singletonList(warmer));
+    }
+
+    @Test
+    public void testWindow() {
+        scheduler.setWindow("01:00-05:00");
+        assertTrue(scheduler.isInWindow(LocalTime.of(1, 0)));
+        assertTrue(scheduler.isInWindow(LocalTime.of(4, 59)));
+        assertFalse(scheduler.isInWindow(LocalTime.of(5, 0)));
+        assertFalse(scheduler.isInWindow(LocalTime.of(12, 0)));
+    }
+
+    @Test
+    public void testWindowOverMidnight() {
+        scheduler.setWindow("22:00 - 02:00");
+        assertTrue(scheduler.isInWindow(LocalTime.of(23, 30)));
+        assertTrue(scheduler.isInWindow(LocalTime.of(1, 0)));
+        assertFalse(scheduler.isInWindow(LocalTime.of(2, 0)));
+        assertFalse(scheduler.isInWindow(LocalTime.of(21, 59)));
+    }
+
+    @Test
+    public void testNoWindow() {
+        scheduler.setWindow("");
+        assertTrue(scheduler.isInWindow(LocalTime.of(12, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        scheduler.setWindow("01:00");
+    }
+
+    @Test
+    public void testRefreshOutsideWindowIsSkipped() {
+        scheduler.setWindow("01:00-05:00");
+        scheduler.refresh(LocalTime.of(12, 0));
+        verify(ontologyService, never()).refreshConcepts();
+    }
+
+    @Test
+    public void testCachesAreWarmedUpOnlyAfterChange() {
+        scheduler.setWindow("");
+        when(ontologyService.refreshConcepts()).thenReturn(false);
+        scheduler.refresh(LocalTime.of(12, 0));
+        verify(warmer, never()).warmUp();
+
+        when(ontologyService.refreshConcepts()).thenReturn(true);
+        scheduler.refresh(LocalTime.of(12, 0));
+        verify(warmer).warmUp();
+    }
+
+    @Test
+    public void testFailedRefreshIsLogged() {
+        scheduler.setWindow("");
+        when(ontologyService.refreshConcepts())
+                .thenThrow(new DatasetCreateException("Upload failed", new IllegalStateException()));
+        scheduler.refresh(LocalTime.of(12, 0));
+        verify(warmer, never()).warmUp();
+    }
+}
@@ -23,10 +23,18 @@
 package fi.vm.kapa.sevi.ontology.service;
 
 import fi.vm.kapa.sevi.ontology.dto.ConceptDTO;
+import fi.vm.kapa.sevi.ontology.dto.NarrowerCheckDTO;
 import fi.vm.kapa.sevi.ontology.exception.ConceptNotFoundException;
+import fi.vm.kapa.sevi.ontology.index.BroaderRelation;
+import fi.vm.kapa.sevi.ontology.index.ConceptIndex;
+import fi.vm.kapa.sevi.ontology.index.ConceptLabel;
+import fi.vm.kapa.sevi.ontology.exception.DatasetCreateException;
+import fi.vm.kapa.sevi.ontology.exception.InvalidParameterException;
 import fi.vm.kapa.sevi.ontology.jena.AllConceptParser;
+import fi.vm.kapa.sevi.ontology.jena.IngestReport;
 import fi.vm.kapa.sevi.ontology.jena.JenaConceptParser;
 import fi.vm.kapa.sevi.ontology.jena.JenaOntologyFetcher;
+import fi.vm.kapa.sevi.ontology.jena.SchemeGraphs;
 import fi.vm.kapa.sevi.ontology.jena.ontology.JupoConceptParser;
 import fi.vm.kapa.sevi.ontology.jena.vocabulary.LifesituationParser;
 import fi.vm.kapa.sevi.ontology.jena.vocabulary.PtvlClassificationParser;
@@ -40,17 +48,26 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.StreamSupport;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -78,6 +95,18 @@ public class OntologyServiceTest {
     @Mock
     private JenaOntologyFetcher jenaOntologyFetcher;
 
+    @Mock
+    private ConceptIndexService conceptIndexService;
+
+    @Mock
+    private SchemeGraphs schemeGraphs;
+
+    @Spy
+    private SnapshotFallback snapshots = new SnapshotFallback(100);
+
+    @Spy
+    private IngestReport ingestReport = new IngestReport();
+
     @InjectMocks
     private OntologyService ontologyService;
 
@@ -236,6 +265,110 @@ public class OntologyServiceTest {
         verify(jenaOntologyFetcher).deleteFusekiTDBDataset();
     }
 
+    @Test
+    public void fetchConceptsIsReported() {
+        when(jenaOntologyFetcher.createFusekiTDBDataset(anyString())).thenReturn("first");
+        assertTrue(ontologyService.fetchConcepts());
+        verify(conceptIndexService, times(getParsers().size())).rebuild(any(JenaConceptParser.class));
+        IngestReport.Run run = ingestReport.getLastRun();
+        assertNull(run.getFailure());
+        assertTrue(run.getPhases().containsKey("rebuild-indexes"));
+    }
+
+    @Test
+    public void failedFetchIsReported() {
+        when(jenaOntologyFetcher.createFusekiTDBDataset(anyString()))
+                .thenThrow(new DatasetCreateException("Upload failed", new IllegalStateException()));
+        assertFalse(ontologyService.fetchConcepts());
+        assertEquals("Upload failed", ingestReport.getLastRun().getFailure());
+    }
+
+    @Test
+    public void stepsAfterLoadAreRepeatedUntilCompleted() {
+        when(jenaOntologyFetcher.createFusekiTDBDataset(anyString())).thenReturn("first");
+        doThrow(new IllegalStateException("Search index unavailable"))
+                .when(indexingService).reIndexTopLevelConcepts(any());
+        for (int i = 0; i < 2; i++) {
+            try {
+                ontologyService.refreshConcepts();
+                fail("The failure of the search index was not thrown");
+            } catch (IllegalStateException expected) {
+                // The concept indexes were rebuilt, the search index was not.
+            }
+        }
+        verify(jenaOntologyFetcher, times(2)).createFusekiTDBDataset(null);
+
+        // The concept indexes were rebuilt, so a fetch without the search index is completed.
+        assertTrue(ontologyService.fetchConcepts());
+        verify(jenaOntologyFetcher).createFusekiTDBDataset("first");
+    }
+
+    @Test
+    public void refreshConceptsTellsWhetherChanged() {
+        when(jenaOntologyFetcher.createFusekiTDBDataset(anyString())).thenReturn(null);
+        assertFalse(ontologyService.refreshConcepts());
+        verify(conceptIndexService, never()).rebuild(any(JenaConceptParser.class));
+        assertNull(ingestReport.getLastRun().getFailure());
+    }
+
+    @Test
+    public void datasetVersionFollowsStoredFingerprint() {
+        when(schemeGraphs.getFingerprint()).thenReturn("first");
+        String version = ontologyService.getDatasetVersion();
+        reset(conceptIndexService);
+        assertEquals(version, ontologyService.getDatasetVersion());
+        verify(conceptIndexService, never()).clear();
+
+        // Another instance has loaded the ontology.
+        when(schemeGraphs.getFingerprint()).thenReturn("second");
+        assertNotEquals(version, ontologyService.getDatasetVersion());
+        verify(conceptIndexService).clear();
+    }
+
+    @Test
+    public void updateIsOngoingUntilItHasFinished() {
+        List<Runnable> queued = new ArrayList<>();
+        ontologyService.setExecutor(new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return queued;
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return false;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return true;
+            }
+        });
+        assertTrue(ontologyService.fetchAndIndexConcepts());
+        assertTrue(ontologyService.isUpdateOngoing());
+        assertFalse(ontologyService.refreshConcepts());
+        assertFalse(ontologyService.deleteOntologies());
+        verify(jenaOntologyFetcher, never()).createFusekiTDBDataset(anyString());
+
+        queued.get(0).run();
+        assertFalse(ontologyService.isUpdateOngoing());
+        verify(jenaOntologyFetcher).createFusekiTDBDataset(anyString());
+    }
+
     @Test
     public void getOneFound() throws Exception {
         setupGetConceptByUriToNull();
@@ -252,6 +385,96 @@ public class OntologyServiceTest {
         ontologyService.getConcept("uri");
     }
 
+    @Test
+    public void checkNarrower() {
+        ConceptIndex index = new ConceptIndex(ConceptType.JUPO, new ArrayList<>(), Arrays.asList(
+                new BroaderRelation("http://localhost/dummy/2", "http://localhost/dummy/1")), new ArrayList<>());
+        when(conceptIndexService.getIndex(any(JenaConceptParser.class))).thenReturn(index);
+
+        List<NarrowerCheckDTO> checks = ontologyService.checkNarrower(Arrays.asList(
+                new NarrowerCheckDTO("http://localhost/dummy/2", "http://localhost/dummy/1"),
+                new NarrowerCheckDTO("http://localhost/dummy/1", "http://localhost/dummy/2")));
+
+        assertTrue(checks.get(0).getNarrower());
+        assertFalse(checks.get(1).getNarrower());
+        assertTrue(ontologyService.isNarrower("http://localhost/dummy/2", "http://localhost/dummy/1"));
+    }
+
+    @Test
+    public void findConceptsByNotation() {
+        ConceptDTO concept = new ConceptDTO("http://localhost/dummy/1", "dummy", "KE12", "http://localhost/dummy");
+        ConceptIndex index = new ConceptIndex(ConceptType.LIFESITUATION, Arrays.asList(concept), new ArrayList<>(),
+                new ArrayList<>());
+        when(conceptIndexService.getIndex(any(JenaConceptParser.class))).thenReturn(index);
+
+        assertEquals(concept, ontologyService.getConceptByNotation("KE12", null));
+        assertEquals(Arrays.asList(concept), ontologyService.findConceptsByNotation(Arrays.asList("KE1", "KE12"), null));
+    }
+
+    @Test(expected=ConceptNotFoundException.class)
+    public void getByNotationNotFound() {
+        when(conceptIndexService.getIndex(any(JenaConceptParser.class))).thenReturn(
+                new ConceptIndex(ConceptType.JUPO, new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+
+        ontologyService.getConceptByNotation("KE12", null);
+    }
+
+    @Test(expected=InvalidParameterException.class)
+    public void suggestRejectsNonPositiveLimit() {
+        ontologyService.suggest("ku", null, "fi", -1);
+    }
+
+    @Test
+    public void suggestIsCapped() {
+        List<ConceptDTO> concepts = new ArrayList<>();
+        List<ConceptLabel> labels = new ArrayList<>();
+        for (int i = 0; i < OntologyService.MAX_SUGGESTIONS + 10; i++) {
+            concepts.add(new ConceptDTO("http://localhost/dummy/" + i, "kuntoutus " + i, "", "http://localhost/dummy"));
+            labels.add(new ConceptLabel("http://localhost/dummy/" + i, "kuntoutus " + i, "fi", true));
+        }
+        when(conceptIndexService.getIndex(jupoConceptParser)).thenReturn(
+                new ConceptIndex(ConceptType.JUPO, concepts, new ArrayList<>(), labels));
+        setupGetConceptType();
+
+        assertEquals(OntologyService.MAX_SUGGESTIONS,
+                ontologyService.suggest("ku", ConceptType.JUPO, "fi", Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void suggestionsAreOrderedByMatchedLabel() {
+        ConceptDTO activation = new ConceptDTO("http://localhost/dummy/1", "aktivointi", "", "http://localhost/dummy");
+        ConceptDTO shared = new ConceptDTO("http://localhost/dummy/2", "ööljy", "", "http://localhost/dummy");
+        when(conceptIndexService.getIndex(jupoConceptParser)).thenReturn(new ConceptIndex(ConceptType.JUPO,
+                Arrays.asList(activation, shared), new ArrayList<>(), Arrays.asList(
+                        new ConceptLabel(activation.getId(), "kuntoutus", "fi", false),
+                        new ConceptLabel(shared.getId(), "kunta", "fi", false))));
+        when(conceptIndexService.getIndex(targetGroupParser)).thenReturn(new ConceptIndex(ConceptType.TARGETGROUP,
+                Collections.singletonList(shared), new ArrayList<>(), Collections.singletonList(
+                        new ConceptLabel(shared.getId(), "kunnat", "fi", true))));
+        when(conceptIndexService.getIndex(ptvlClassificationParser)).thenReturn(emptyIndex(ConceptType.PTVL));
+        when(conceptIndexService.getIndex(lifesituationParser)).thenReturn(emptyIndex(ConceptType.LIFESITUATION));
+
+        List<ConceptDTO> suggestions = ontologyService.suggest("kun", null, "fi", 10);
+
+        // By the alternative labels kunta and kuntoutus, not by the preferred labels.
+        assertEquals(Arrays.asList(shared, activation), suggestions);
+    }
+
+    @Test
+    public void conceptByLabelIsFoundFromAll() {
+        when(allConceptParser.getConceptByLabel("yksi")).thenReturn(first);
+        assertEquals(first, ontologyService.getConceptByLabel("yksi"));
+    }
+
+    @Test(expected=ConceptNotFoundException.class)
+    public void conceptByLabelNotFound() {
+        ontologyService.getConceptByLabel("kolme");
+    }
+
+    private static ConceptIndex emptyIndex(ConceptType type) {
+        return new ConceptIndex(type, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
     private void setupGetConcepts(List<ConceptDTO> _concepts) {
         when(allConceptParser.getConcepts()).thenReturn(StreamSupport.stream(_concepts.spliterator(), false));
         getParsers().forEach(p -> when(p.getConcepts()).thenReturn(StreamSupport.stream(_concepts.spliterator(), false)));
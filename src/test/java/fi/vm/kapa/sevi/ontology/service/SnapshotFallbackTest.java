@@ -0,0 +1,77 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Population Register Centre
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fi.vm.kapa.sevi.ontology.service;
+
+import fi.vm.kapa.sevi.ontology.exception.FusekiUnavailableException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SnapshotFallbackTest {
+
+    private final SnapshotFallback snapshots = new SnapshotFallback(3);
+
+    @Test
+    public void testAnswersFromSnapshotWhenUnavailable() {
+        snapshots.query("a", () -> Arrays.asList("1", "2"));
+        assertEquals(Arrays.asList("1", "2"), snapshots.query("a", unavailable()));
+    }
+
+    @Test
+    public void testDropsLeastRecentlyUsedByConcepts() {
+        snapshots.query("a", () -> "1");
+        snapshots.query("b", () -> "2");
+        snapshots.query("a", unavailable());
+        // The list takes the room of two concepts, so b is dropped and a is kept.
+        snapshots.query("c", () -> Arrays.asList("3", "4"));
+        assertEquals("1", snapshots.query("a", unavailable()));
+        assertEquals(Arrays.asList("3", "4"), snapshots.query("c", unavailable()));
+        assertUnavailable("b");
+    }
+
+    @Test
+    public void testDoesNotRememberResultLargerThanBound() {
+        snapshots.query("a", () -> Collections.nCopies(4, "1"));
+        assertUnavailable("a");
+    }
+
+    private void assertUnavailable(String key) {
+        try {
+            snapshots.query(key, unavailable());
+            fail("Answered " + key + " from a snapshot");
+        } catch (FusekiUnavailableException expected) {
+            // No snapshot.
+        }
+    }
+
+    private static <T> Supplier<T> unavailable() {
+        return () -> {
+            throw new FusekiUnavailableException("Fuseki is down");
+        };
+    }
+}